@@ -0,0 +1,82 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares loading a {@link Corpus#PROGRAM} source from a {@code .plcast}
+ * file through {@link AstReader} against lexing and parsing it again, along
+ * with the cost of writing the file with {@link AstWriter}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AstBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Input {
+
+        @Param({"1KB", "64KB", "1MB", "16MB"})
+        public String size;
+
+        public String source;
+        public Ast.Source ast;
+        public byte[] bytes;
+        public Path file;
+
+        @Setup
+        public void setup() throws IOException {
+            source = Corpus.PROGRAM.generate(Corpus.size(size));
+            ast = new Parser(new Lexer(source).lex()).parseSource();
+            bytes = AstWriter.write(ast);
+            file = Files.createTempFile("benchmark", ".plcast");
+            Files.write(file, bytes);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.delete(file);
+        }
+
+    }
+
+    @Benchmark
+    public Ast.Source parse(Input input) {
+        return new Parser(new Lexer(input.source).lex()).parseSource();
+    }
+
+    @Benchmark
+    public byte[] write(Input input) {
+        return AstWriter.write(input.ast);
+    }
+
+    @Benchmark
+    public Ast.Source read(Input input) throws IOException {
+        return AstReader.read(ByteBuffer.wrap(input.bytes));
+    }
+
+    @Benchmark
+    public Ast.Source readMapped(Input input) throws IOException {
+        return AstReader.read(input.file);
+    }
+
+}
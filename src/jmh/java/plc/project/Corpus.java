@@ -0,0 +1,205 @@
+package plc.project;
+
+import java.util.Random;
+
+/**
+ * Generates synthetic sources for the benchmarks, each dominated by one kind
+ * of token. Sources are generated from a fixed seed so every run of a
+ * benchmark lexes the same input.
+ */
+public enum Corpus {
+
+    IDENTIFIER {
+        @Override
+        void append(StringBuilder builder, Random random) {
+            appendIdentifier(builder, random);
+            builder.append(random.nextInt(8) == 0 ? '\n' : ' ');
+        }
+    },
+
+    NUMBER {
+        @Override
+        void append(StringBuilder builder, Random random) {
+            appendNumber(builder, random);
+            builder.append(random.nextInt(8) == 0 ? '\n' : ' ');
+        }
+    },
+
+    /**
+     * Strings where roughly one character in four is an escape. The lexer
+     * consumes an extra character after each escape, so every escape is
+     * followed by a letter to keep the strings terminated.
+     */
+    STRING {
+        @Override
+        void append(StringBuilder builder, Random random) {
+            builder.append('"');
+            int length = 1 + random.nextInt(32);
+            for (int i = 0; i < length; i++) {
+                if (random.nextInt(4) == 0) {
+                    builder.append('\\').append(ESCAPES.charAt(random.nextInt(ESCAPES.length())));
+                }
+                builder.append((char) ('a' + random.nextInt(26)));
+            }
+            builder.append('"').append(random.nextInt(8) == 0 ? '\n' : ' ');
+        }
+    },
+
+    OPERATOR {
+        @Override
+        void append(StringBuilder builder, Random random) {
+            builder.append(OPERATORS[random.nextInt(OPERATORS.length)]);
+            if (random.nextInt(4) == 0) {
+                builder.append(' ');
+            }
+        }
+    },
+
+    /**
+     * Statements in the style of a typical program, mixing all kinds of
+     * tokens.
+     */
+    MIXED {
+        @Override
+        void append(StringBuilder builder, Random random) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    builder.append("LET ");
+                    appendIdentifier(builder, random);
+                    builder.append(" = ");
+                    appendNumber(builder, random);
+                    builder.append(";\n");
+                    break;
+                case 1:
+                    appendIdentifier(builder, random);
+                    builder.append(" = ");
+                    appendIdentifier(builder, random);
+                    builder.append(' ').append(OPERATORS[7 + random.nextInt(OPERATORS.length - 7)]).append(' ');
+                    appendNumber(builder, random);
+                    builder.append(";\n");
+                    break;
+                case 2:
+                    builder.append("print(\"value:\\t \", ");
+                    appendIdentifier(builder, random);
+                    builder.append(", 'c');\n");
+                    break;
+                default:
+                    builder.append("IF ");
+                    appendIdentifier(builder, random);
+                    builder.append(" < ");
+                    appendNumber(builder, random);
+                    builder.append(" DO\n    RETURN ");
+                    appendIdentifier(builder, random);
+                    builder.append(";\nEND\n");
+                    break;
+            }
+        }
+    },
+
+    /**
+     * Methods whose bodies are {@link #MIXED} statements, so the source can
+     * also be parsed.
+     */
+    PROGRAM {
+        @Override
+        void append(StringBuilder builder, Random random) {
+            builder.append("DEF ");
+            appendIdentifier(builder, random);
+            builder.append("(x: Integer, y Decimal): Integer DO\n");
+            int statements = 1 + random.nextInt(16);
+            for (int i = 0; i < statements; i++) {
+                MIXED.append(builder, random);
+            }
+            builder.append("END\n");
+        }
+    },
+
+    /**
+     * Methods whose bodies assign chains of field accesses and method calls,
+     * such as {@code a.b(c).d = e.f;}, which exercise the lookahead of the
+     * parser.
+     */
+    CHAIN {
+        @Override
+        void append(StringBuilder builder, Random random) {
+            builder.append("DEF ");
+            appendIdentifier(builder, random);
+            builder.append("() DO\n");
+            int statements = 1 + random.nextInt(16);
+            for (int i = 0; i < statements; i++) {
+                builder.append("    ");
+                appendChain(builder, random);
+                builder.append(" = ");
+                appendChain(builder, random);
+                builder.append(";\n");
+            }
+            builder.append("END\n");
+        }
+    };
+
+    private static final String ESCAPES = "bnrt'\"\\";
+    private static final String[] OPERATORS = {
+            "(", ")", ",", ";", ":", ".", "=", "+", "-", "*", "/", "<", "<=", ">", ">=", "==", "!="
+    };
+
+    /**
+     * Returns a source of at least {@code size} characters, which is lexed
+     * without errors.
+     */
+    public String generate(int size) {
+        Random random = new Random(size);
+        StringBuilder builder = new StringBuilder(size + 64);
+        while (builder.length() < size) {
+            append(builder, random);
+        }
+        return builder.toString();
+    }
+
+    abstract void append(StringBuilder builder, Random random);
+
+    private static void appendIdentifier(StringBuilder builder, Random random) {
+        builder.append((char) ((random.nextBoolean() ? 'a' : 'A') + random.nextInt(26)));
+        int length = random.nextInt(12);
+        for (int i = 0; i < length; i++) {
+            int c = random.nextInt(38);
+            builder.append(c < 26 ? (char) ('a' + c) : c < 36 ? (char) ('0' + c - 26) : c == 36 ? '_' : '-');
+        }
+    }
+
+    private static void appendChain(StringBuilder builder, Random random) {
+        appendIdentifier(builder, random);
+        int length = 1 + random.nextInt(4);
+        for (int i = 0; i < length; i++) {
+            builder.append('.');
+            appendIdentifier(builder, random);
+            if (random.nextBoolean()) {
+                builder.append('(');
+                appendIdentifier(builder, random);
+                builder.append(')');
+            }
+        }
+    }
+
+    private static void appendNumber(StringBuilder builder, Random random) {
+        if (random.nextInt(4) == 0) {
+            builder.append('-');
+        }
+        builder.append(random.nextInt(100000));
+        if (random.nextBoolean()) {
+            builder.append('.').append(random.nextInt(1000));
+        }
+    }
+
+    /**
+     * Parses a size such as {@code 1KB} or {@code 100MB}.
+     */
+    public static int size(String size) {
+        if (size.endsWith("MB")) {
+            return Integer.parseInt(size.substring(0, size.length() - 2)) << 20;
+        } else if (size.endsWith("KB")) {
+            return Integer.parseInt(size.substring(0, size.length() - 2)) << 10;
+        }
+        return Integer.parseInt(size);
+    }
+
+}
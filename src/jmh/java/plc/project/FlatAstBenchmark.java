@@ -0,0 +1,283 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares walking every node of a {@link Corpus#PROGRAM} source as {@link
+ * Ast} nodes and as a {@link FlatAst}, along with the cost of converting
+ * between them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlatAstBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Input {
+
+        @Param({"64KB", "1MB", "16MB"})
+        public String size;
+
+        public Ast.Source ast;
+        public FlatAst flat;
+
+        @Setup
+        public void setup() {
+            ast = new Parser(new Lexer(Corpus.PROGRAM.generate(Corpus.size(size))).lex()).parseSource();
+            flat = FlatAst.of(ast);
+        }
+
+    }
+
+    @Benchmark
+    public FlatAst flatten(Input input) {
+        return FlatAst.of(input.ast);
+    }
+
+    @Benchmark
+    public Ast.Source expand(Input input) {
+        return input.flat.toAst();
+    }
+
+    @Benchmark
+    public int walk(Input input) {
+        return new Counter().visit(input.ast);
+    }
+
+    @Benchmark
+    public int walkFlat(Input input) {
+        return input.flat.visit(input.flat.getRoot(), new FlatCounter(input.flat));
+    }
+
+    /**
+     * Counts the nodes of a tree.
+     */
+    private static final class Counter implements Ast.Visitor<Integer> {
+
+        @Override
+        public Integer visit(Ast.Source ast) {
+            int count = 1;
+            for (Ast.Field field : ast.getFields()) {
+                count += visit(field);
+            }
+            for (Ast.Method method : ast.getMethods()) {
+                count += visit(method);
+            }
+            return count;
+        }
+
+        @Override
+        public Integer visit(Ast.Field ast) {
+            return 1 + visit(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Method ast) {
+            return 1 + visit(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.Expression ast) {
+            return 1 + visit(ast.getExpression());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.Declaration ast) {
+            return 1 + visit(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.Assignment ast) {
+            return 1 + visit(ast.getReceiver()) + visit(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.If ast) {
+            return 1 + visit(ast.getCondition()) + visit(ast.getThenStatements()) + visit(ast.getElseStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.For ast) {
+            return 1 + visit(ast.getValue()) + visit(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.While ast) {
+            return 1 + visit(ast.getCondition()) + visit(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.Return ast) {
+            return 1 + visit(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Literal ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Group ast) {
+            return 1 + visit(ast.getExpression());
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Binary ast) {
+            return 1 + visit(ast.getLeft()) + visit(ast.getRight());
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Access ast) {
+            return 1 + visit(ast.getReceiver());
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Function ast) {
+            return 1 + visit(ast.getReceiver()) + visit(ast.getArguments());
+        }
+
+        private int visit(Optional<? extends Ast> ast) {
+            return ast.isPresent() ? visit(ast.get()) : 0;
+        }
+
+        private int visit(Iterable<? extends Ast> asts) {
+            int count = 0;
+            for (Ast ast : asts) {
+                count += visit(ast);
+            }
+            return count;
+        }
+
+    }
+
+    /**
+     * Counts the nodes of a flat tree, in the same way as {@link Counter}.
+     */
+    private static final class FlatCounter implements FlatAst.Visitor<Integer> {
+
+        private final FlatAst ast;
+
+        private FlatCounter(FlatAst ast) {
+            this.ast = ast;
+        }
+
+        @Override
+        public Integer visitSource(int node) {
+            int count = 1;
+            for (int i = 0; i < ast.getFieldCount(node); i++) {
+                count += visit(ast.getField(node, i));
+            }
+            for (int i = 0; i < ast.getMethodCount(node); i++) {
+                count += visit(ast.getMethod(node, i));
+            }
+            return count;
+        }
+
+        @Override
+        public Integer visitField(int node) {
+            return 1 + visit(ast.getValue(node));
+        }
+
+        @Override
+        public Integer visitMethod(int node) {
+            return 1 + statements(node);
+        }
+
+        @Override
+        public Integer visitExpression(int node) {
+            return 1 + visit(ast.getExpression(node));
+        }
+
+        @Override
+        public Integer visitDeclaration(int node) {
+            return 1 + visit(ast.getValue(node));
+        }
+
+        @Override
+        public Integer visitAssignment(int node) {
+            return 1 + visit(ast.getReceiver(node)) + visit(ast.getValue(node));
+        }
+
+        @Override
+        public Integer visitIf(int node) {
+            int count = 1 + visit(ast.getCondition(node)) + statements(node);
+            for (int i = 0; i < ast.getElseStatementCount(node); i++) {
+                count += visit(ast.getElseStatement(node, i));
+            }
+            return count;
+        }
+
+        @Override
+        public Integer visitFor(int node) {
+            return 1 + visit(ast.getValue(node)) + statements(node);
+        }
+
+        @Override
+        public Integer visitWhile(int node) {
+            return 1 + visit(ast.getCondition(node)) + statements(node);
+        }
+
+        @Override
+        public Integer visitReturn(int node) {
+            return 1 + visit(ast.getValue(node));
+        }
+
+        @Override
+        public Integer visitLiteral(int node) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitGroup(int node) {
+            return 1 + visit(ast.getExpression(node));
+        }
+
+        @Override
+        public Integer visitBinary(int node) {
+            return 1 + visit(ast.getLeft(node)) + visit(ast.getRight(node));
+        }
+
+        @Override
+        public Integer visitAccess(int node) {
+            return 1 + visit(ast.getReceiver(node));
+        }
+
+        @Override
+        public Integer visitFunction(int node) {
+            int count = 1 + visit(ast.getReceiver(node));
+            for (int i = 0; i < ast.getArgumentCount(node); i++) {
+                count += visit(ast.getArgument(node, i));
+            }
+            return count;
+        }
+
+        private int visit(int node) {
+            return node < 0 ? 0 : ast.visit(node, this);
+        }
+
+        private int statements(int node) {
+            int count = 0;
+            for (int i = 0; i < ast.getStatementCount(node); i++) {
+                count += visit(ast.getStatement(node, i));
+            }
+            return count;
+        }
+
+    }
+
+}
@@ -0,0 +1,151 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of the lexer over the generated {@link Corpus}
+ * sources. Besides operations per second, each benchmark reports the bytes
+ * (characters) and tokens lexed per second through {@link Counters}; dividing
+ * bytes by 2^20 gives MB/s. Running with the gc profiler (as configured in
+ * build.gradle) reports the allocation rate as gc.alloc.rate.norm.
+ *
+ * {@link #lex(Input, Counters)} lexes an entire source, while the benchmarks
+ * for the individual lex methods call the method for every token of a 64KB
+ * source of the corresponding corpus, skipping the whitespace between them
+ * with the same lexer so only the tokens themselves are allocated.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LexerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Input {
+
+        @Param({"MIXED", "IDENTIFIER", "NUMBER", "STRING", "OPERATOR"})
+        public Corpus corpus;
+
+        @Param({"1KB", "64KB", "1MB", "100MB"})
+        public String size;
+
+        public String source;
+        public int tokens;
+
+        @Setup
+        public void setup() {
+            source = corpus.generate(Corpus.size(size));
+            tokens = new Lexer(source).lexBuffer().size();
+        }
+
+    }
+
+    /**
+     * A 64KB source of each single token corpus, with its number of tokens.
+     */
+    @State(Scope.Benchmark)
+    public static class Sources {
+
+        public String identifiers;
+        public String numbers;
+        public String strings;
+        public String operators;
+        public int identifierTokens;
+        public int numberTokens;
+        public int stringTokens;
+        public int operatorTokens;
+
+        @Setup
+        public void setup() {
+            identifiers = Corpus.IDENTIFIER.generate(64 << 10);
+            numbers = Corpus.NUMBER.generate(64 << 10);
+            strings = Corpus.STRING.generate(64 << 10);
+            operators = Corpus.OPERATOR.generate(64 << 10);
+            identifierTokens = new Lexer(identifiers).lexBuffer().size();
+            numberTokens = new Lexer(numbers).lexBuffer().size();
+            stringTokens = new Lexer(strings).lexBuffer().size();
+            operatorTokens = new Lexer(operators).lexBuffer().size();
+        }
+
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+
+        public long bytes;
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            tokens = 0;
+        }
+
+    }
+
+    @Benchmark
+    public List<Token> lex(Input input, Counters counters) {
+        counters.bytes += input.source.length();
+        counters.tokens += input.tokens;
+        return new Lexer(input.source).lex();
+    }
+
+    @Benchmark
+    public void lexIdentifier(Sources sources, Counters counters, Blackhole blackhole) {
+        Lexer lexer = new Lexer(sources.identifiers);
+        while (lexer.nextToken()) {
+            blackhole.consume(lexer.lexIdentifier());
+        }
+        counters.bytes += sources.identifiers.length();
+        counters.tokens += sources.identifierTokens;
+    }
+
+    @Benchmark
+    public void lexNumber(Sources sources, Counters counters, Blackhole blackhole) {
+        Lexer lexer = new Lexer(sources.numbers);
+        while (lexer.nextToken()) {
+            blackhole.consume(lexer.lexNumber());
+        }
+        counters.bytes += sources.numbers.length();
+        counters.tokens += sources.numberTokens;
+    }
+
+    @Benchmark
+    public void lexString(Sources sources, Counters counters, Blackhole blackhole) {
+        Lexer lexer = new Lexer(sources.strings);
+        while (lexer.nextToken()) {
+            blackhole.consume(lexer.lexString());
+        }
+        counters.bytes += sources.strings.length();
+        counters.tokens += sources.stringTokens;
+    }
+
+    @Benchmark
+    public void lexOperator(Sources sources, Counters counters, Blackhole blackhole) {
+        Lexer lexer = new Lexer(sources.operators);
+        while (lexer.nextToken()) {
+            blackhole.consume(lexer.lexOperator());
+        }
+        counters.bytes += sources.operators.length();
+        counters.tokens += sources.operatorTokens;
+    }
+
+}
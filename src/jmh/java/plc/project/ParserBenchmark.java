@@ -0,0 +1,92 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the parser over tokens which are already lexed, and compares
+ * matching a lookahead through {@link Parser#peek(Object...)} with matching
+ * the same lookahead compiled into a {@link TokenPattern}. With the gc
+ * profiler, gc.alloc.rate.norm of the peek benchmarks shows the varargs array
+ * allocated by each call of the former. {@link #parseInterned(Input)} shows
+ * the cost of sharing subexpressions through an {@link AstInterner}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    private static final TokenPattern CALL = TokenPattern.of(".", Token.Type.IDENTIFIER, "(");
+
+    @State(Scope.Benchmark)
+    public static class Input {
+
+        @Param({"PROGRAM", "CHAIN"})
+        public Corpus corpus;
+
+        @Param({"1KB", "64KB", "1MB"})
+        public String size;
+
+        public List<Token> tokens;
+
+        @Setup
+        public void setup() {
+            tokens = new Lexer(corpus.generate(Corpus.size(size))).lex();
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class Lookahead {
+
+        public Parser parser;
+
+        @Setup
+        public void setup() {
+            parser = new Parser(Arrays.asList(
+                    new Token(Token.Type.OPERATOR, ".", 0),
+                    new Token(Token.Type.IDENTIFIER, "name", 1),
+                    new Token(Token.Type.OPERATOR, "(", 5)
+            ));
+        }
+
+    }
+
+    @Benchmark
+    public Ast.Source parse(Input input) {
+        return new Parser(input.tokens).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source parseInterned(Input input) {
+        Parser parser = new Parser(input.tokens);
+        parser.setInterner(new AstInterner());
+        return parser.parseSource();
+    }
+
+    @Benchmark
+    public boolean peekObjects(Lookahead lookahead) {
+        return lookahead.parser.peek(".", Token.Type.IDENTIFIER, "(");
+    }
+
+    @Benchmark
+    public boolean peekPattern(Lookahead lookahead) {
+        return lookahead.parser.peek(CALL);
+    }
+
+}
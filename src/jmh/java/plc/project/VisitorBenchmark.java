@@ -0,0 +1,212 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures visiting a deep expression tree of literals, groups, and binary
+ * expressions. {@link #visit(Input)} and {@link #instanceOf(Input)} walk the
+ * tree with the same visitor, dispatching through the switch on the kind of
+ * each node in {@link Ast.Visitor#visit(Ast)} or through the chain of {@code
+ * instanceof} tests it used before, to isolate the cost of dispatch. The
+ * analyzer and interpreter benchmarks show its effect on real visitors.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VisitorBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Input {
+
+        /**
+         * The number of terms in the expression, each of which adds a binary
+         * expression to the depth of the tree.
+         */
+        @Param({"16", "256", "1024"})
+        public int terms;
+
+        public Ast.Expr expression;
+
+        @Setup
+        public void setup() {
+            StringBuilder builder = new StringBuilder("1");
+            for (int i = 1; i < terms; i++) {
+                builder.append(i % 2 == 0 ? " + " : " * ").append(i % 3 == 0 ? "(" + i + " - 1)" : Integer.toString(i));
+            }
+            expression = new Parser(new Lexer(builder.toString()).lex()).parseExpression();
+        }
+
+    }
+
+    @Benchmark
+    public int visit(Input input) {
+        return new Counter().visit(input.expression);
+    }
+
+    @Benchmark
+    public int instanceOf(Input input) {
+        return new InstanceOfCounter().visit(input.expression);
+    }
+
+    @Benchmark
+    public Ast.Expr analyze(Input input) {
+        new Analyzer(null).visit(input.expression);
+        return input.expression;
+    }
+
+    @Benchmark
+    public Environment.PlcObject interpret(Input input) {
+        return new Interpreter(null).visit(input.expression);
+    }
+
+    /**
+     * Counts the expressions in a tree.
+     */
+    private static class Counter implements Ast.Visitor<Integer> {
+
+        @Override
+        public Integer visit(Ast.Source ast) {
+            throw notAnExpression();
+        }
+
+        @Override
+        public Integer visit(Ast.Field ast) {
+            throw notAnExpression();
+        }
+
+        @Override
+        public Integer visit(Ast.Method ast) {
+            throw notAnExpression();
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.Expression ast) {
+            throw notAnExpression();
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.Declaration ast) {
+            throw notAnExpression();
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.Assignment ast) {
+            throw notAnExpression();
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.If ast) {
+            throw notAnExpression();
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.For ast) {
+            throw notAnExpression();
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.While ast) {
+            throw notAnExpression();
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.Return ast) {
+            throw notAnExpression();
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Literal ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Group ast) {
+            return 1 + visit(ast.getExpression());
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Binary ast) {
+            return 1 + visit(ast.getLeft()) + visit(ast.getRight());
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Access ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Function ast) {
+            return 1;
+        }
+
+        /**
+         * The benchmark only visits expressions, so any other node is a bug.
+         */
+        private static AssertionError notAnExpression() {
+            return new AssertionError("not an expression");
+        }
+
+    }
+
+    /**
+     * The same as {@link Counter}, but dispatching in the order of the former
+     * {@code instanceof} chain.
+     */
+    private static final class InstanceOfCounter extends Counter {
+
+        @Override
+        public Integer visit(Ast ast) {
+            if (ast instanceof Ast.Source) {
+                return visit((Ast.Source) ast);
+            } else if (ast instanceof Ast.Field) {
+                return visit((Ast.Field) ast);
+            } else if (ast instanceof Ast.Method) {
+                return visit((Ast.Method) ast);
+            } else if (ast instanceof Ast.Stmt.Expression) {
+                return visit((Ast.Stmt.Expression) ast);
+            } else if (ast instanceof Ast.Stmt.Declaration) {
+                return visit((Ast.Stmt.Declaration) ast);
+            } else if (ast instanceof Ast.Stmt.Assignment) {
+                return visit((Ast.Stmt.Assignment) ast);
+            } else if (ast instanceof Ast.Stmt.If) {
+                return visit((Ast.Stmt.If) ast);
+            } else if (ast instanceof Ast.Stmt.For) {
+                return visit((Ast.Stmt.For) ast);
+            } else if (ast instanceof Ast.Stmt.While) {
+                return visit((Ast.Stmt.While) ast);
+            } else if (ast instanceof Ast.Stmt.Return) {
+                return visit((Ast.Stmt.Return) ast);
+            } else if (ast instanceof Ast.Stmt.Error) {
+                return visit((Ast.Stmt.Error) ast);
+            } else if (ast instanceof Ast.Expr.Literal) {
+                return visit((Ast.Expr.Literal) ast);
+            } else if (ast instanceof Ast.Expr.Group) {
+                return visit((Ast.Expr.Group) ast);
+            } else if (ast instanceof Ast.Expr.Binary) {
+                return visit((Ast.Expr.Binary) ast);
+            } else if (ast instanceof Ast.Expr.Access) {
+                return visit((Ast.Expr.Access) ast);
+            } else if (ast instanceof Ast.Expr.Function) {
+                return visit((Ast.Expr.Function) ast);
+            } else {
+                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+            }
+        }
+
+    }
+
+}
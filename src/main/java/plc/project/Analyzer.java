@@ -201,7 +201,19 @@ public final class Analyzer implements Ast.Visitor<Void> {
     @Override
     public Void visit(Ast.Expr.Literal ast) {
         //Maybe missing types and see BigDecimal
-        if(ast.getLiteral() == null){
+        if(ast.isCompactInteger()){
+            //the same check as BigInteger.bitCount, without creating one
+            long value = ast.getCompactValue();
+            if(Long.bitCount(value < 0 ? ~value : value) > 32){
+                throw new RuntimeException("Invalid Integer (Literal)");
+            }
+            ast.setType(Environment.Type.INTEGER);
+        }
+        else if(ast.isCompactDecimal() && ast.getCompactScale() >= 0){
+            //a long with a non-negative scale is always a finite double
+            ast.setType(Environment.Type.DECIMAL);
+        }
+        else if(ast.getLiteral() == null){
             ast.setType(Environment.Type.NIL);
         }
         else if(ast.getLiteral() instanceof java.lang.Boolean){
@@ -1,5 +1,7 @@
 package plc.project;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -11,12 +13,100 @@ import java.util.Optional;
  */
 public abstract class Ast {
 
+    /*
+     * The kind of each class of node, which is used by Visitor#visit(Ast) to
+     * dispatch with a single switch and identifies the nodes of a FlatAst.
+     */
+    public static final int SOURCE = 0;
+    public static final int FIELD = 1;
+    public static final int METHOD = 2;
+
+    public static final int EXPRESSION = 3;
+    public static final int DECLARATION = 4;
+    public static final int ASSIGNMENT = 5;
+    public static final int IF = 6;
+    public static final int FOR = 7;
+    public static final int WHILE = 8;
+    public static final int RETURN = 9;
+    public static final int ERROR = 10;
+
+    public static final int LITERAL = 11;
+    public static final int GROUP = 12;
+    public static final int BINARY = 13;
+    public static final int ACCESS = 14;
+    public static final int FUNCTION = 15;
+
+    final int kind;
+    private int hash;
+    private int id = -1;
+    private int start = -1;
+    private int end = -1;
+
+    Ast(int kind) {
+        this.kind = kind;
+    }
+
+    /**
+     * Returns the id assigned to the node by the {@link Parser}, or -1 if it
+     * was not created by one. Ids are assigned in the order nodes are
+     * completed, from 0, so per-node data can be kept in arrays indexed by id
+     * (see {@link Parser} for when they are not dense).
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the index in the source of the first character of the node, or
+     * -1 if it was not created by a {@link Parser}.
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the index in the source after the last character of the node,
+     * or -1 if it was not created by a {@link Parser}.
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    void setSpan(int id, int start, int end) {
+        this.id = id;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Returns a hash of the syntax of the node, which is computed on the first
+     * call and cached. The types, variables, and functions set by the Analyzer
+     * are not included, so analyzing a tree does not change its hash, but the
+     * lists of children must not be modified once the node has been hashed.
+     */
+    @Override
+    public final int hashCode() {
+        int hash = this.hash;
+        if (hash == 0) {
+            hash = 31 * kind + hashSyntax();
+            this.hash = hash = hash == 0 ? 1 : hash;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the hash of the children and other syntax of the node, which is
+     * combined with its kind by {@link #hashCode()}.
+     */
+    abstract int hashSyntax();
+
     public static final class Source extends Ast {
 
         private final List<Field> fields;
         private final List<Method> methods;
 
         public Source(List<Field> fields, List<Method> methods) {
+            super(SOURCE);
             this.fields = fields;
             this.methods = methods;
         }
@@ -29,9 +119,14 @@ public abstract class Ast {
             return methods;
         }
 
+        @Override
+        int hashSyntax() {
+            return Objects.hash(fields, methods);
+        }
+
         @Override
         public boolean equals(Object obj) {
-            return obj instanceof Source &&
+            return obj == this || obj instanceof Source && obj.hashCode() == hashCode() &&
                     fields.equals(((Source) obj).fields) &&
                     methods.equals(((Source) obj).methods);
         }
@@ -58,6 +153,7 @@ public abstract class Ast {
         }
 
         public Field(String name, String typeName, Optional<Expr> value) {
+            super(FIELD);
             this.name = name;
             this.typeName = typeName;
             this.value = value;
@@ -86,9 +182,14 @@ public abstract class Ast {
             this.variable = variable;
         }
 
+        @Override
+        int hashSyntax() {
+            return Objects.hash(name, typeName, value);
+        }
+
         @Override
         public boolean equals(Object obj) {
-            return obj instanceof Field &&
+            return obj == this || obj instanceof Field && obj.hashCode() == hashCode() &&
                     name.equals(((Field) obj).name) &&
                     typeName.equals(((Field) obj).typeName) &&
                     value.equals(((Field) obj).value) &&
@@ -124,6 +225,7 @@ public abstract class Ast {
         }
 
         public Method(String name, List<String> parameters, List<String> parameterTypeNames, Optional<String> returnTypeName, List<Stmt> statements) {
+            super(METHOD);
             this.name = name;
             this.parameters = parameters;
             this.parameterTypeNames = parameterTypeNames;
@@ -162,9 +264,14 @@ public abstract class Ast {
             this.function = function;
         }
 
+        @Override
+        int hashSyntax() {
+            return Objects.hash(name, parameters, parameterTypeNames, returnTypeName, statements);
+        }
+
         @Override
         public boolean equals(Object obj) {
-            return obj instanceof Method &&
+            return obj == this || obj instanceof Method && obj.hashCode() == hashCode() &&
                     name.equals(((Method) obj).name) &&
                     parameters.equals(((Method) obj).parameters) &&
                     parameterTypeNames.equals(((Method) obj).parameterTypeNames) &&
@@ -189,11 +296,16 @@ public abstract class Ast {
 
     public static abstract class Stmt extends Ast {
 
+        Stmt(int kind) {
+            super(kind);
+        }
+
         public static final class Expression extends Stmt {
 
             private final Expr expression;
 
             public Expression(Expr expression) {
+                super(EXPRESSION);
                 this.expression = expression;
             }
 
@@ -201,9 +313,14 @@ public abstract class Ast {
                 return expression;
             }
 
+            @Override
+            int hashSyntax() {
+                return expression.hashCode();
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Expression &&
+                return obj == this || obj instanceof Expression && obj.hashCode() == hashCode() &&
                         expression.equals(((Expression) obj).expression);
             }
 
@@ -228,6 +345,7 @@ public abstract class Ast {
             }
 
             public Declaration(String name, Optional<String> typeName, Optional<Expr> value) {
+                super(DECLARATION);
                 this.name = name;
                 this.typeName = typeName;
                 this.value = value;
@@ -256,9 +374,14 @@ public abstract class Ast {
                 this.variable = variable;
             }
 
+            @Override
+            int hashSyntax() {
+                return Objects.hash(name, typeName, value);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Declaration &&
+                return obj == this || obj instanceof Declaration && obj.hashCode() == hashCode() &&
                         name.equals(((Declaration) obj).name) &&
                         typeName.equals(((Declaration) obj).typeName) &&
                         value.equals(((Declaration) obj).value) &&
@@ -283,6 +406,7 @@ public abstract class Ast {
             private final Expr value;
 
             public Assignment(Expr receiver, Expr value) {
+                super(ASSIGNMENT);
                 this.receiver = receiver;
                 this.value = value;
             }
@@ -295,9 +419,14 @@ public abstract class Ast {
                 return value;
             }
 
+            @Override
+            int hashSyntax() {
+                return Objects.hash(receiver, value);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Assignment &&
+                return obj == this || obj instanceof Assignment && obj.hashCode() == hashCode() &&
                         receiver.equals(((Assignment) obj).receiver) &&
                         value.equals(((Assignment) obj).value);
             }
@@ -320,6 +449,7 @@ public abstract class Ast {
 
 
             public If(Expr condition, List<Stmt> thenStatements, List<Stmt> elseStatements) {
+                super(IF);
                 this.condition = condition;
                 this.thenStatements = thenStatements;
                 this.elseStatements = elseStatements;
@@ -337,9 +467,14 @@ public abstract class Ast {
                 return elseStatements;
             }
 
+            @Override
+            int hashSyntax() {
+                return Objects.hash(condition, thenStatements, elseStatements);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof If &&
+                return obj == this || obj instanceof If && obj.hashCode() == hashCode() &&
                         condition.equals(((If) obj).condition) &&
                         thenStatements.equals(((If) obj).thenStatements) &&
                         elseStatements.equals(((If) obj).elseStatements);
@@ -363,6 +498,7 @@ public abstract class Ast {
             private final List<Stmt> statements;
 
             public For(String name, Expr value, List<Stmt> statements) {
+                super(FOR);
                 this.name = name;
                 this.value = value;
                 this.statements = statements;
@@ -380,9 +516,14 @@ public abstract class Ast {
                 return statements;
             }
 
+            @Override
+            int hashSyntax() {
+                return Objects.hash(name, value, statements);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof For &&
+                return obj == this || obj instanceof For && obj.hashCode() == hashCode() &&
                         name.equals(((For) obj).name) &&
                         value.equals(((For) obj).value) &&
                         statements.equals(((For) obj).statements);
@@ -405,6 +546,7 @@ public abstract class Ast {
             private final List<Stmt> statements;
 
             public While(Expr condition, List<Stmt> statements) {
+                super(WHILE);
                 this.condition = condition;
                 this.statements = statements;
             }
@@ -417,9 +559,14 @@ public abstract class Ast {
                 return statements;
             }
 
+            @Override
+            int hashSyntax() {
+                return Objects.hash(condition, statements);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof While &&
+                return obj == this || obj instanceof While && obj.hashCode() == hashCode() &&
                         condition.equals(((While) obj).condition) &&
                         statements.equals(((While) obj).statements);
             }
@@ -439,6 +586,7 @@ public abstract class Ast {
             private final Expr value;
 
             public Return(Expr value) {
+                super(RETURN);
                 this.value = value;
             }
 
@@ -446,9 +594,14 @@ public abstract class Ast {
                 return value;
             }
 
+            @Override
+            int hashSyntax() {
+                return value.hashCode();
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Return &&
+                return obj == this || obj instanceof Return && obj.hashCode() == hashCode() &&
                         value.equals(((Return) obj).value);
             }
 
@@ -461,25 +614,136 @@ public abstract class Ast {
 
         }
 
+        /**
+         * A statement which failed to parse, in place of which the parser
+         * recorded the diagnostic when recovering from errors (see {@link
+         * Parser#setDiagnostics(List)}). The tokens of the statement are
+         * skipped, so it has no other contents.
+         */
+        public static final class Error extends Stmt {
+
+            private final Diagnostic diagnostic;
+
+            public Error(Diagnostic diagnostic) {
+                super(ERROR);
+                this.diagnostic = diagnostic;
+            }
+
+            public Diagnostic getDiagnostic() {
+                return diagnostic;
+            }
+
+            @Override
+            int hashSyntax() {
+                return diagnostic.hashCode();
+            }
+
+            @Override
+            public boolean equals(Object obj) {
+                return obj == this || obj instanceof Error && obj.hashCode() == hashCode() &&
+                        diagnostic.equals(((Error) obj).diagnostic);
+            }
+
+            @Override
+            public String toString() {
+                return "Ast.Stmt.Error{" +
+                        "diagnostic=" + diagnostic +
+                        '}';
+            }
+
+        }
+
     }
 
     public static abstract class Expr extends Ast {
 
+        Expr(int kind) {
+            super(kind);
+        }
+
         public abstract Environment.Type getType();
 
+        /**
+         * A literal value. Integers which fit in a long, and decimals whose
+         * unscaled value fits in a long, may be kept in that compact form (see
+         * {@link #ofInteger(long)} and {@link #ofDecimal(long, int)}), in
+         * which case the {@link BigInteger} or {@link BigDecimal} is only
+         * created when {@link #getLiteral()} is first called.
+         */
         public static final class Literal extends Expr {
 
-            private final Object literal;
+            private static final int OBJECT = 0;
+            private static final int INTEGER = 1;
+            private static final int DECIMAL = 2;
+
+            private Object literal;
+            private final int form;
+            private final long value;
+            private final int scale;
             private Environment.Type type = null;
 
             public Literal(Object literal) {
+                this(OBJECT, 0, 0);
                 this.literal = literal;
             }
 
+            private Literal(int form, long value, int scale) {
+                super(LITERAL);
+                this.form = form;
+                this.value = value;
+                this.scale = scale;
+            }
+
+            /**
+             * Returns a compact integer literal with the given value.
+             */
+            public static Literal ofInteger(long value) {
+                return new Literal(INTEGER, value, 0);
+            }
+
+            /**
+             * Returns a compact decimal literal with the given unscaled value
+             * and scale, as in {@link BigDecimal#valueOf(long, int)}.
+             */
+            public static Literal ofDecimal(long unscaledValue, int scale) {
+                return new Literal(DECIMAL, unscaledValue, scale);
+            }
+
+            /**
+             * Returns the value of the literal, which for compact integers and
+             * decimals is a {@link BigInteger} or {@link BigDecimal} created on
+             * the first call.
+             */
             public Object getLiteral() {
+                if (literal == null && form != OBJECT) {
+                    literal = form == INTEGER ? BigInteger.valueOf(value) : BigDecimal.valueOf(value, scale);
+                }
                 return literal;
             }
 
+            public boolean isCompactInteger() {
+                return form == INTEGER;
+            }
+
+            public boolean isCompactDecimal() {
+                return form == DECIMAL;
+            }
+
+            /**
+             * Returns the value of a compact integer, or the unscaled value of
+             * a compact decimal.
+             */
+            public long getCompactValue() {
+                return value;
+            }
+
+            /**
+             * Returns the scale of a compact decimal.
+             */
+            public int getCompactScale() {
+                return scale;
+            }
+
             @Override
             public Environment.Type getType() {
                 if (type == null) {
@@ -492,17 +756,54 @@ public abstract class Ast {
                 this.type = type;
             }
 
+            /**
+             * Hashes numbers by their value, so that compact literals hash the
+             * same as the {@link BigInteger} or {@link BigDecimal} they equal
+             * without creating it.
+             */
+            @Override
+            int hashSyntax() {
+                if (form == INTEGER) {
+                    return Long.hashCode(value);
+                } else if (form == DECIMAL) {
+                    return 31 * Long.hashCode(value) + scale;
+                } else if (literal instanceof BigInteger) {
+                    return hash((BigInteger) literal);
+                } else if (literal instanceof BigDecimal) {
+                    return 31 * hash(((BigDecimal) literal).unscaledValue()) + ((BigDecimal) literal).scale();
+                }
+                return Objects.hashCode(literal);
+            }
+
+            private static int hash(BigInteger integer) {
+                return integer.bitLength() < Long.SIZE ? Long.hashCode(integer.longValue()) : integer.hashCode();
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Literal &&
-                        Objects.equals(literal, ((Literal) obj).literal) &&
-                        Objects.equals(type, ((Literal) obj).type);
+                if (obj == this) {
+                    return true;
+                } else if (!(obj instanceof Literal) || obj.hashCode() != hashCode()) {
+                    return false;
+                }
+                Literal other = (Literal) obj;
+                return hasSameLiteral(other) && Objects.equals(type, other.type);
+            }
+
+            /**
+             * Returns whether the literals have equal values, regardless of
+             * their types.
+             */
+            boolean hasSameLiteral(Literal other) {
+                return form != OBJECT && form == other.form
+                        ? value == other.value && scale == other.scale
+                        : Objects.equals(getLiteral(), other.getLiteral());
             }
 
             @Override
             public String toString() {
                 return "Ast.Expr.Literal{" +
-                        "literal=" + literal +
+                        "literal=" + getLiteral() +
                         ", type=" + type +
                         '}';
             }
@@ -515,6 +816,7 @@ public abstract class Ast {
             private Environment.Type type = null;
 
             public Group(Expr expression) {
+                super(GROUP);
                 this.expression = expression;
             }
 
@@ -533,9 +835,14 @@ public abstract class Ast {
             public void setType(Environment.Type type) {
                 this.type = type;
             }
+            @Override
+            int hashSyntax() {
+                return expression.hashCode();
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Group &&
+                return obj == this || obj instanceof Group && obj.hashCode() == hashCode() &&
                         expression.equals(((Group) obj).expression) &&
                         Objects.equals(type, ((Group) obj).type);
             }
@@ -558,6 +865,7 @@ public abstract class Ast {
             private Environment.Type type = null;
 
             public Binary(String operator, Expr left, Expr right) {
+                super(BINARY);
                 this.operator = operator;
                 this.left = left;
                 this.right = right;
@@ -587,9 +895,14 @@ public abstract class Ast {
                 this.type = type;
             }
 
+            @Override
+            int hashSyntax() {
+                return Objects.hash(operator, left, right);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Binary &&
+                return obj == this || obj instanceof Binary && obj.hashCode() == hashCode() &&
                         operator.equals(((Binary) obj).operator) &&
                         left.equals(((Binary) obj).left) &&
                         right.equals(((Binary) obj).right) &&
@@ -615,6 +928,7 @@ public abstract class Ast {
             private Environment.Variable variable = null;
 
             public Access(Optional<Expr> receiver, String name) {
+                super(ACCESS);
                 this.receiver = receiver;
                 this.name = name;
             }
@@ -643,9 +957,14 @@ public abstract class Ast {
                 return getVariable().getType();
             }
 
+            @Override
+            int hashSyntax() {
+                return Objects.hash(receiver, name);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Access &&
+                return obj == this || obj instanceof Access && obj.hashCode() == hashCode() &&
                         receiver.equals(((Access) obj).receiver) &&
                         name.equals(((Access) obj).name) &&
                         Objects.equals(variable, ((Access) obj).variable);
@@ -670,6 +989,7 @@ public abstract class Ast {
             private Environment.Function function = null;
 
             public Function(Optional<Expr> receiver, String name, List<Expr> arguments) {
+                super(FUNCTION);
                 this.receiver = receiver;
                 this.name = name;
                 this.arguments = arguments;
@@ -703,9 +1023,14 @@ public abstract class Ast {
                 return getFunction().getReturnType();
             }
 
+            @Override
+            int hashSyntax() {
+                return Objects.hash(receiver, name, arguments);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Function &&
+                return obj == this || obj instanceof Function && obj.hashCode() == hashCode() &&
                         receiver.equals(((Function) obj).receiver) &&
                         name.equals(((Function) obj).name) &&
                         arguments.equals(((Function) obj).arguments) &&
@@ -728,39 +1053,46 @@ public abstract class Ast {
 
     public interface Visitor<T> {
 
+        /**
+         * Calls the method for the class of the node, switching on its kind
+         * instead of testing each class in turn.
+         */
         default T visit(Ast ast) {
-            if (ast instanceof Source) {
-                return visit((Source) ast);
-            } else if (ast instanceof Field) {
-                return visit((Field) ast);
-            } else if (ast instanceof Method) {
-                return visit((Method) ast);
-            } else if (ast instanceof Stmt.Expression) {
-                return visit((Stmt.Expression) ast);
-            } else if (ast instanceof Stmt.Declaration) {
-                return visit((Stmt.Declaration) ast);
-            } else if (ast instanceof Stmt.Assignment) {
-                return visit((Stmt.Assignment) ast);
-            } else if (ast instanceof Stmt.If) {
-                return visit((Stmt.If) ast);
-            } else if (ast instanceof Stmt.For) {
-                return visit((Stmt.For) ast);
-            } else if (ast instanceof Stmt.While) {
-                return visit((Stmt.While) ast);
-            } else if (ast instanceof Stmt.Return) {
-                return visit((Stmt.Return) ast);
-            } else if (ast instanceof Expr.Literal) {
-                return visit((Expr.Literal) ast);
-            } else if (ast instanceof Expr.Group) {
-                return visit((Expr.Group) ast);
-            } else if (ast instanceof Expr.Binary) {
-                return visit((Expr.Binary) ast);
-            } else if (ast instanceof Expr.Access) {
-                return visit((Expr.Access) ast);
-            } else if (ast instanceof Expr.Function) {
-                return visit((Expr.Function) ast);
-            } else {
-                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+            switch (ast.kind) {
+                case SOURCE:
+                    return visit((Source) ast);
+                case FIELD:
+                    return visit((Field) ast);
+                case METHOD:
+                    return visit((Method) ast);
+                case EXPRESSION:
+                    return visit((Stmt.Expression) ast);
+                case DECLARATION:
+                    return visit((Stmt.Declaration) ast);
+                case ASSIGNMENT:
+                    return visit((Stmt.Assignment) ast);
+                case IF:
+                    return visit((Stmt.If) ast);
+                case FOR:
+                    return visit((Stmt.For) ast);
+                case WHILE:
+                    return visit((Stmt.While) ast);
+                case RETURN:
+                    return visit((Stmt.Return) ast);
+                case ERROR:
+                    return visit((Stmt.Error) ast);
+                case LITERAL:
+                    return visit((Expr.Literal) ast);
+                case GROUP:
+                    return visit((Expr.Group) ast);
+                case BINARY:
+                    return visit((Expr.Binary) ast);
+                case ACCESS:
+                    return visit((Expr.Access) ast);
+                case FUNCTION:
+                    return visit((Expr.Function) ast);
+                default:
+                    throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
             }
         }
 
@@ -784,6 +1116,14 @@ public abstract class Ast {
 
         T visit(Stmt.Return ast);
 
+        /**
+         * Statements which failed to parse can't be analyzed, interpreted, or
+         * generated, so by default this throws an exception.
+         */
+        default T visit(Stmt.Error ast) {
+            throw new IllegalStateException("The statement failed to parse: " + ast.getDiagnostic() + ".");
+        }
+
         T visit(Expr.Literal ast);
 
         T visit(Expr.Group ast);
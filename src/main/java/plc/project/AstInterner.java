@@ -0,0 +1,152 @@
+package plc.project;
+
+/**
+ * Shares structurally identical subexpressions between the nodes built by a
+ * {@link Parser} (see {@link Parser#setInterner(AstInterner)}), so a literal
+ * or arithmetic expression repeated throughout a source is only kept once.
+ *
+ * Only literals, groups, and binary expressions whose operands are interned
+ * are shared. The {@link Analyzer} sets the types of these from their syntax
+ * alone, so each occurrence of a shared node is given the same type (or fails
+ * with the same exception). Accesses and function calls are resolved in the
+ * scope they appear in, so they are never shared, nor is any expression which
+ * contains one.
+ *
+ * Nodes are compared by their syntax, ignoring their types, and operands by
+ * identity, so interning a node is a single lookup in a hash table. An
+ * interner may be used for several sources, including after some of them are
+ * analyzed, in which case the shared nodes of later sources already have their
+ * types set. It is not thread-safe.
+ *
+ * Since a shared node may be part of several sources, parsers with an interner
+ * take the ids of their nodes from it rather than numbering each source from
+ * 0. The ids are then unique and dense over all of those sources together, and
+ * arrays indexed by them are sized with {@link #getIdCount()}.
+ */
+public final class AstInterner {
+
+    private Ast.Expr[] table = new Ast.Expr[64];
+    private int size;
+    private int ids;
+
+    /**
+     * Returns the shared node which is structurally identical to the given
+     * expression, adding it if there is none. Expressions which can't be
+     * shared are returned as is.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Ast.Expr> T intern(T expr) {
+        if (!isInternable(expr)) {
+            return expr;
+        }
+        int mask = table.length - 1;
+        int i = index(expr.hashCode(), mask);
+        for (; table[i] != null; i = (i + 1) & mask) {
+            if (table[i] == expr || isSame(table[i], expr)) {
+                return (T) table[i];
+            }
+        }
+        table[i] = expr;
+        if (++size > table.length / 2) {
+            resize();
+        }
+        return expr;
+    }
+
+    /**
+     * Returns the number of shared nodes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of ids assigned to the nodes of the sources parsed
+     * with the interner, which is greater than the id of any of them.
+     */
+    public int getIdCount() {
+        return ids;
+    }
+
+    /**
+     * Returns the next id for a node created by a parser with the interner.
+     */
+    int nextId() {
+        return ids++;
+    }
+
+    private boolean isInternable(Ast.Expr expr) {
+        switch (expr.kind) {
+            case Ast.LITERAL:
+                return true;
+            case Ast.GROUP:
+                return contains(((Ast.Expr.Group) expr).getExpression());
+            case Ast.BINARY:
+                return contains(((Ast.Expr.Binary) expr).getLeft()) && contains(((Ast.Expr.Binary) expr).getRight());
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns whether the expression is itself one of the shared nodes.
+     */
+    private boolean contains(Ast.Expr expr) {
+        if (expr.kind != Ast.LITERAL && expr.kind != Ast.GROUP && expr.kind != Ast.BINARY) {
+            return false;
+        }
+        int mask = table.length - 1;
+        for (int i = index(expr.hashCode(), mask); table[i] != null; i = (i + 1) & mask) {
+            if (table[i] == expr) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the nodes have the same syntax, given that both have
+     * interned operands.
+     */
+    private static boolean isSame(Ast.Expr first, Ast.Expr second) {
+        if (first.kind != second.kind || first.hashCode() != second.hashCode()) {
+            return false;
+        }
+        switch (first.kind) {
+            case Ast.LITERAL:
+                return ((Ast.Expr.Literal) first).hasSameLiteral((Ast.Expr.Literal) second);
+            case Ast.GROUP:
+                return ((Ast.Expr.Group) first).getExpression() == ((Ast.Expr.Group) second).getExpression();
+            default: {
+                Ast.Expr.Binary left = (Ast.Expr.Binary) first;
+                Ast.Expr.Binary right = (Ast.Expr.Binary) second;
+                return left.getLeft() == right.getLeft() && left.getRight() == right.getRight()
+                        && left.getOperator().equals(right.getOperator());
+            }
+        }
+    }
+
+    private void resize() {
+        Ast.Expr[] previous = table;
+        table = new Ast.Expr[2 * previous.length];
+        int mask = table.length - 1;
+        for (Ast.Expr expr : previous) {
+            if (expr != null) {
+                int i = index(expr.hashCode(), mask);
+                while (table[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = expr;
+            }
+        }
+    }
+
+    /**
+     * Spreads the high bits of the hash into the low bits used as the index,
+     * as in {@link java.util.HashMap}.
+     */
+    private static int index(int hash, int mask) {
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+}
@@ -0,0 +1,337 @@
+package plc.project;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reads an {@link Ast.Source} written by {@link AstWriter}. Files are
+ * memory-mapped, so loading a tree only decodes the strings in the pool and
+ * allocates the nodes, without lexing or parsing. The nodes have the same ids
+ * and spans as those written.
+ *
+ * If the file includes the analysis, the types, variables, and functions are
+ * set on the nodes as well. Variables and functions are created again from
+ * their names and types, with {@link Environment#NIL} as their value and
+ * implementation, as the {@link Analyzer} defines them.
+ */
+public final class AstReader {
+
+    private final ByteBuffer buffer;
+    private boolean analyzed;
+    private String[] strings;
+    private final List<Object> bindings = new ArrayList<>();
+
+    private AstReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Reads the source from the given file by memory-mapping it.
+     */
+    public static Ast.Source read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads the source from the buffer, starting at its position. Throws an
+     * {@link IOException} if the buffer does not hold a source in the current
+     * version of the format.
+     */
+    public static Ast.Source read(ByteBuffer buffer) throws IOException {
+        AstReader reader = new AstReader(buffer);
+        if (buffer.remaining() < 12 || buffer.getInt() != AstWriter.MAGIC) {
+            throw new IOException("Not an AST file.");
+        }
+        int version = buffer.getInt();
+        if (version != AstWriter.VERSION) {
+            throw new IOException("Unsupported AST file version " + version + ".");
+        }
+        try {
+            reader.analyzed = (buffer.getInt() & AstWriter.ANALYZED) != 0;
+            reader.readPool();
+            return reader.readSource();
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt AST file.", e);
+        }
+    }
+
+    private void readPool() {
+        strings = new String[readVarInt()];
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < strings.length; i++) {
+            int length = readVarInt();
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, 2 * bytes.length)];
+            }
+            buffer.get(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    private Ast.Source readSource() {
+        List<Ast.Field> fields = new ArrayList<>();
+        for (int i = readVarInt(); i > 0; i--) {
+            expect(AstWriter.FIELD);
+            String name = readString();
+            String typeName = readString();
+            Ast.Field field = new Ast.Field(name, typeName, readOptional());
+            if (analyzed) {
+                field.setVariable(readVariable());
+            }
+            fields.add(readSpan(field));
+        }
+        List<Ast.Method> methods = new ArrayList<>();
+        for (int i = readVarInt(); i > 0; i--) {
+            expect(AstWriter.METHOD);
+            String name = readString();
+            List<String> parameters = readStrings();
+            List<String> parameterTypeNames = readStrings();
+            Optional<String> returnTypeName = readVarInt() == AstWriter.NONE ? Optional.empty() : Optional.of(readString());
+            Ast.Method method = new Ast.Method(name, parameters, parameterTypeNames, returnTypeName, readStatements());
+            if (analyzed) {
+                method.setFunction(readFunction());
+            }
+            methods.add(readSpan(method));
+        }
+        return readSpan(new Ast.Source(fields, methods));
+    }
+
+    private List<Ast.Stmt> readStatements() {
+        int size = readVarInt();
+        List<Ast.Stmt> statements = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            statements.add(readStatement());
+        }
+        return statements;
+    }
+
+    private Ast.Stmt readStatement() {
+        return readSpan(readStatement(readVarInt()));
+    }
+
+    private Ast.Stmt readStatement(int tag) {
+        switch (tag) {
+            case AstWriter.EXPRESSION:
+                return new Ast.Stmt.Expression(readExpression());
+            case AstWriter.DECLARATION: {
+                String name = readString();
+                Optional<String> typeName = readVarInt() == AstWriter.NONE ? Optional.empty() : Optional.of(readString());
+                Ast.Stmt.Declaration declaration = new Ast.Stmt.Declaration(name, typeName, readOptional());
+                if (analyzed) {
+                    declaration.setVariable(readVariable());
+                }
+                return declaration;
+            }
+            case AstWriter.ASSIGNMENT: {
+                Ast.Expr receiver = readExpression();
+                return new Ast.Stmt.Assignment(receiver, readExpression());
+            }
+            case AstWriter.IF: {
+                Ast.Expr condition = readExpression();
+                List<Ast.Stmt> thenStatements = readStatements();
+                return new Ast.Stmt.If(condition, thenStatements, readStatements());
+            }
+            case AstWriter.FOR: {
+                String name = readString();
+                Ast.Expr value = readExpression();
+                return new Ast.Stmt.For(name, value, readStatements());
+            }
+            case AstWriter.WHILE: {
+                Ast.Expr condition = readExpression();
+                return new Ast.Stmt.While(condition, readStatements());
+            }
+            case AstWriter.RETURN:
+                return new Ast.Stmt.Return(readExpression());
+            case AstWriter.ERROR: {
+                String message = readString();
+                return new Ast.Stmt.Error(new Diagnostic(message, readVarInt()));
+            }
+            default:
+                throw new IllegalStateException("Invalid statement tag " + tag + ".");
+        }
+    }
+
+    private Optional<Ast.Expr> readOptional() {
+        int tag = readVarInt();
+        return tag == AstWriter.NONE ? Optional.empty() : Optional.of(readExpression(tag));
+    }
+
+    private Ast.Expr readExpression() {
+        return readExpression(readVarInt());
+    }
+
+    private Ast.Expr readExpression(int tag) {
+        Ast.Expr ast = readNode(tag);
+        if (analyzed) {
+            if (ast instanceof Ast.Expr.Literal) {
+                ((Ast.Expr.Literal) ast).setType(readType());
+            } else if (ast instanceof Ast.Expr.Group) {
+                ((Ast.Expr.Group) ast).setType(readType());
+            } else if (ast instanceof Ast.Expr.Binary) {
+                ((Ast.Expr.Binary) ast).setType(readType());
+            } else if (ast instanceof Ast.Expr.Access) {
+                ((Ast.Expr.Access) ast).setVariable(readVariable());
+            } else {
+                ((Ast.Expr.Function) ast).setFunction(readFunction());
+            }
+        }
+        return readSpan(ast);
+    }
+
+    /**
+     * Reads the id, start, and end of the node written after its fields.
+     */
+    private <T extends Ast> T readSpan(T ast) {
+        int id = readVarInt() - 1;
+        int start = readVarInt() - 1;
+        ast.setSpan(id, start, readVarInt() - 1);
+        return ast;
+    }
+
+    private Ast.Expr readNode(int tag) {
+        switch (tag) {
+            case AstWriter.NIL:
+                return new Ast.Expr.Literal(null);
+            case AstWriter.TRUE:
+                return new Ast.Expr.Literal(Boolean.TRUE);
+            case AstWriter.FALSE:
+                return new Ast.Expr.Literal(Boolean.FALSE);
+            case AstWriter.INTEGER:
+                return Ast.Expr.Literal.ofInteger(readVarLong());
+            case AstWriter.BIG_INTEGER:
+                return new Ast.Expr.Literal(readBigInteger());
+            case AstWriter.DECIMAL: {
+                long unscaled = readVarLong();
+                return Ast.Expr.Literal.ofDecimal(unscaled, (int) readVarLong());
+            }
+            case AstWriter.BIG_DECIMAL: {
+                BigInteger unscaled = readBigInteger();
+                return new Ast.Expr.Literal(new BigDecimal(unscaled, (int) readVarLong()));
+            }
+            case AstWriter.CHARACTER:
+                return new Ast.Expr.Literal((char) readVarInt());
+            case AstWriter.STRING:
+                return new Ast.Expr.Literal(readString());
+            case AstWriter.GROUP:
+                return new Ast.Expr.Group(readExpression());
+            case AstWriter.BINARY: {
+                String operator = readString();
+                Ast.Expr left = readExpression();
+                return new Ast.Expr.Binary(operator, left, readExpression());
+            }
+            case AstWriter.ACCESS: {
+                Optional<Ast.Expr> receiver = readOptional();
+                return new Ast.Expr.Access(receiver, readString());
+            }
+            case AstWriter.FUNCTION: {
+                Optional<Ast.Expr> receiver = readOptional();
+                String name = readString();
+                int size = readVarInt();
+                List<Ast.Expr> arguments = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    arguments.add(readExpression());
+                }
+                return new Ast.Expr.Function(receiver, name, arguments);
+            }
+            default:
+                throw new IllegalStateException("Invalid expression tag " + tag + ".");
+        }
+    }
+
+    private Environment.Type readType() {
+        return Environment.getType(readString());
+    }
+
+    private Environment.Variable readVariable() {
+        int index = readVarInt();
+        if (index > 0) {
+            return (Environment.Variable) bindings.get(index - 1);
+        }
+        String name = readString();
+        String jvmName = readString();
+        Environment.Variable variable = new Environment.Variable(name, jvmName, readType(), Environment.NIL);
+        bindings.add(variable);
+        return variable;
+    }
+
+    private Environment.Function readFunction() {
+        int index = readVarInt();
+        if (index > 0) {
+            return (Environment.Function) bindings.get(index - 1);
+        }
+        String name = readString();
+        String jvmName = readString();
+        int arity = readVarInt();
+        List<Environment.Type> parameterTypes = new ArrayList<>(arity);
+        for (int i = 0; i < arity; i++) {
+            parameterTypes.add(readType());
+        }
+        Environment.Function function = new Environment.Function(name, jvmName, parameterTypes, readType(), args -> Environment.NIL);
+        bindings.add(function);
+        return function;
+    }
+
+    private BigInteger readBigInteger() {
+        byte[] bytes = new byte[readVarInt()];
+        buffer.get(bytes);
+        return new BigInteger(bytes);
+    }
+
+    private List<String> readStrings() {
+        int size = readVarInt();
+        List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            strings.add(readString());
+        }
+        return strings;
+    }
+
+    private String readString() {
+        return strings[readVarInt()];
+    }
+
+    private void expect(int tag) {
+        int actual = readVarInt();
+        if (actual != tag) {
+            throw new IllegalStateException("Expected tag " + tag + ", received " + actual + ".");
+        }
+    }
+
+    /**
+     * Reads an integer written by {@link AstWriter}, in groups of 7 bits
+     * where the high bit is set if more bytes follow.
+     */
+    private int readVarInt() {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private long readVarLong() {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return (value >>> 1) ^ -(value & 1);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,455 @@
+package plc.project;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Writes an {@link Ast.Source} in a compact binary format (a {@code .plcast}
+ * file), which is read back by {@link AstReader} much faster than lexing and
+ * parsing the source again.
+ *
+ * The file starts with a header of the magic number {@code "PLCA"}, the
+ * format {@link #VERSION}, and flags, followed by a pool of every distinct
+ * string in the tree, then the nodes of the tree in pre-order. Each node is a tag followed
+ * by its fields: strings are indices into the pool, lists are prefixed with
+ * their size, and an optional value is either {@link #NONE} or the value.
+ * Each node ends with its id, start, and end (see {@link Ast#getId()}).
+ * Integers are written as variable length integers, so most take one byte.
+ *
+ * Trees which have been analyzed can be written with {@link
+ * #writeAnalyzed(Ast.Source)}, which also writes the types, variables, and
+ * functions set by the {@link Analyzer}. Types are written by name and must
+ * be registered with {@link Environment#registerType(Environment.Type)}.
+ * Each variable and function is written once, where it is first referenced,
+ * and by its index afterwards so nodes referring to the same binding still
+ * share it when read.
+ */
+public final class AstWriter {
+
+    static final int MAGIC = 0x504C4341;
+
+    /**
+     * The version of the format, which must be incremented whenever it
+     * changes. Files with any other version are rejected by the reader.
+     */
+    public static final int VERSION = 4;
+
+    /**
+     * The flag in the header set if the file includes the analysis.
+     */
+    static final int ANALYZED = 1;
+
+    static final int NONE = 0;
+
+    static final int FIELD = 1;
+    static final int METHOD = 2;
+
+    static final int EXPRESSION = 3;
+    static final int DECLARATION = 4;
+    static final int ASSIGNMENT = 5;
+    static final int IF = 6;
+    static final int FOR = 7;
+    static final int WHILE = 8;
+    static final int RETURN = 9;
+    static final int ERROR = 23;
+
+    static final int NIL = 10;
+    static final int TRUE = 11;
+    static final int FALSE = 12;
+    static final int INTEGER = 13;
+    static final int BIG_INTEGER = 14;
+    static final int DECIMAL = 15;
+    static final int BIG_DECIMAL = 16;
+    static final int CHARACTER = 17;
+    static final int STRING = 18;
+    static final int GROUP = 19;
+    static final int BINARY = 20;
+    static final int ACCESS = 21;
+    static final int FUNCTION = 22;
+
+    private final boolean analyzed;
+    private final Map<String, Integer> indices = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final Map<Object, Integer> bindings = new IdentityHashMap<>();
+    private byte[] bytes = new byte[4096];
+    private int length = 0;
+
+    private AstWriter(boolean analyzed) {
+        this.analyzed = analyzed;
+    }
+
+    /**
+     * Returns the serialized form of the source.
+     */
+    public static byte[] write(Ast.Source source) {
+        return write(source, false);
+    }
+
+    /**
+     * Returns the serialized form of a source which has been analyzed,
+     * including its types, variables, and functions. Throws an {@link
+     * IllegalStateException} if any of them are uninitialized.
+     */
+    public static byte[] writeAnalyzed(Ast.Source source) {
+        return write(source, true);
+    }
+
+    private static byte[] write(Ast.Source source, boolean analyzed) {
+        AstWriter nodes = new AstWriter(analyzed);
+        nodes.writeSource(source);
+        AstWriter writer = new AstWriter(analyzed);
+        writer.writeInt(MAGIC);
+        writer.writeInt(VERSION);
+        writer.writeInt(analyzed ? ANALYZED : 0);
+        writer.writeVarInt(nodes.strings.size());
+        for (String string : nodes.strings) {
+            byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+            writer.writeVarInt(encoded.length);
+            writer.writeBytes(encoded, encoded.length);
+        }
+        writer.writeBytes(nodes.bytes, nodes.length);
+        return Arrays.copyOf(writer.bytes, writer.length);
+    }
+
+    /**
+     * Writes the serialized form of the source to the given file.
+     */
+    public static void write(Ast.Source source, Path path) throws IOException {
+        Files.write(path, write(source));
+    }
+
+    private void writeSource(Ast.Source ast) {
+        writeVarInt(ast.getFields().size());
+        for (Ast.Field field : ast.getFields()) {
+            writeVarInt(FIELD);
+            writeString(field.getName());
+            writeString(field.getTypeName());
+            writeOptional(field.getValue());
+            if (analyzed) {
+                writeVariable(field.getVariable());
+            }
+            writeSpan(field);
+        }
+        writeVarInt(ast.getMethods().size());
+        for (Ast.Method method : ast.getMethods()) {
+            writeVarInt(METHOD);
+            writeString(method.getName());
+            writeStrings(method.getParameters());
+            writeStrings(method.getParameterTypeNames());
+            if (method.getReturnTypeName().isPresent()) {
+                writeVarInt(STRING);
+                writeString(method.getReturnTypeName().get());
+            } else {
+                writeVarInt(NONE);
+            }
+            writeStatements(method.getStatements());
+            if (analyzed) {
+                writeFunction(method.getFunction());
+            }
+            writeSpan(method);
+        }
+        writeSpan(ast);
+    }
+
+    private void writeStatements(List<Ast.Stmt> statements) {
+        writeVarInt(statements.size());
+        for (Ast.Stmt statement : statements) {
+            writeStatement(statement);
+        }
+    }
+
+    private void writeStatement(Ast.Stmt ast) {
+        if (ast instanceof Ast.Stmt.Expression) {
+            writeVarInt(EXPRESSION);
+            writeExpression(((Ast.Stmt.Expression) ast).getExpression());
+        } else if (ast instanceof Ast.Stmt.Declaration) {
+            Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) ast;
+            writeVarInt(DECLARATION);
+            writeString(declaration.getName());
+            if (declaration.getTypeName().isPresent()) {
+                writeVarInt(STRING);
+                writeString(declaration.getTypeName().get());
+            } else {
+                writeVarInt(NONE);
+            }
+            writeOptional(declaration.getValue());
+            if (analyzed) {
+                writeVariable(declaration.getVariable());
+            }
+        } else if (ast instanceof Ast.Stmt.Assignment) {
+            writeVarInt(ASSIGNMENT);
+            writeExpression(((Ast.Stmt.Assignment) ast).getReceiver());
+            writeExpression(((Ast.Stmt.Assignment) ast).getValue());
+        } else if (ast instanceof Ast.Stmt.If) {
+            writeVarInt(IF);
+            writeExpression(((Ast.Stmt.If) ast).getCondition());
+            writeStatements(((Ast.Stmt.If) ast).getThenStatements());
+            writeStatements(((Ast.Stmt.If) ast).getElseStatements());
+        } else if (ast instanceof Ast.Stmt.For) {
+            writeVarInt(FOR);
+            writeString(((Ast.Stmt.For) ast).getName());
+            writeExpression(((Ast.Stmt.For) ast).getValue());
+            writeStatements(((Ast.Stmt.For) ast).getStatements());
+        } else if (ast instanceof Ast.Stmt.While) {
+            writeVarInt(WHILE);
+            writeExpression(((Ast.Stmt.While) ast).getCondition());
+            writeStatements(((Ast.Stmt.While) ast).getStatements());
+        } else if (ast instanceof Ast.Stmt.Return) {
+            writeVarInt(RETURN);
+            writeExpression(((Ast.Stmt.Return) ast).getValue());
+        } else if (ast instanceof Ast.Stmt.Error) {
+            writeVarInt(ERROR);
+            writeString(((Ast.Stmt.Error) ast).getDiagnostic().getMessage());
+            writeVarInt(((Ast.Stmt.Error) ast).getDiagnostic().getIndex());
+        } else {
+            throw new AssertionError("Unimplemented statement: " + ast.getClass());
+        }
+        writeSpan(ast);
+    }
+
+    private void writeOptional(Optional<Ast.Expr> ast) {
+        if (ast.isPresent()) {
+            writeExpression(ast.get());
+        } else {
+            writeVarInt(NONE);
+        }
+    }
+
+    private void writeExpression(Ast.Expr ast) {
+        if (ast instanceof Ast.Expr.Literal) {
+            writeLiteral((Ast.Expr.Literal) ast);
+            if (analyzed) {
+                writeType(ast.getType());
+            }
+        } else if (ast instanceof Ast.Expr.Group) {
+            writeVarInt(GROUP);
+            writeExpression(((Ast.Expr.Group) ast).getExpression());
+            if (analyzed) {
+                writeType(ast.getType());
+            }
+        } else if (ast instanceof Ast.Expr.Binary) {
+            writeVarInt(BINARY);
+            writeString(((Ast.Expr.Binary) ast).getOperator());
+            writeExpression(((Ast.Expr.Binary) ast).getLeft());
+            writeExpression(((Ast.Expr.Binary) ast).getRight());
+            if (analyzed) {
+                writeType(ast.getType());
+            }
+        } else if (ast instanceof Ast.Expr.Access) {
+            writeVarInt(ACCESS);
+            writeOptional(((Ast.Expr.Access) ast).getReceiver());
+            writeString(((Ast.Expr.Access) ast).getName());
+            if (analyzed) {
+                writeVariable(((Ast.Expr.Access) ast).getVariable());
+            }
+        } else if (ast instanceof Ast.Expr.Function) {
+            Ast.Expr.Function function = (Ast.Expr.Function) ast;
+            writeVarInt(FUNCTION);
+            writeOptional(function.getReceiver());
+            writeString(function.getName());
+            writeVarInt(function.getArguments().size());
+            for (Ast.Expr argument : function.getArguments()) {
+                writeExpression(argument);
+            }
+            if (analyzed) {
+                writeFunction(function.getFunction());
+            }
+        } else {
+            throw new AssertionError("Unimplemented expression: " + ast.getClass());
+        }
+        writeSpan(ast);
+    }
+
+    /**
+     * Writes the id, start, and end of the node, plus one so the -1 of a node
+     * which was not parsed is written as 0.
+     */
+    private void writeSpan(Ast ast) {
+        writeVarInt(ast.getId() + 1);
+        writeVarInt(ast.getStart() + 1);
+        writeVarInt(ast.getEnd() + 1);
+    }
+
+    /**
+     * Writes a literal value, using zigzag variable length integers (see
+     * {@link #writeVarLong(long)}) for integers and the unscaled values of
+     * decimals which fit in a long, and a byte array for the rest.
+     */
+    private void writeLiteral(Ast.Expr.Literal ast) {
+        if (ast.isCompactInteger()) {
+            writeVarInt(INTEGER);
+            writeVarLong(ast.getCompactValue());
+            return;
+        } else if (ast.isCompactDecimal()) {
+            writeVarInt(DECIMAL);
+            writeVarLong(ast.getCompactValue());
+            writeVarLong(ast.getCompactScale());
+            return;
+        }
+        Object literal = ast.getLiteral();
+        if (literal == null) {
+            writeVarInt(NIL);
+        } else if (literal instanceof Boolean) {
+            writeVarInt((Boolean) literal ? TRUE : FALSE);
+        } else if (literal instanceof BigInteger) {
+            BigInteger integer = (BigInteger) literal;
+            if (integer.bitLength() < 64) {
+                writeVarInt(INTEGER);
+                writeVarLong(integer.longValue());
+            } else {
+                writeVarInt(BIG_INTEGER);
+                writeBigInteger(integer);
+            }
+        } else if (literal instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) literal;
+            if (decimal.unscaledValue().bitLength() < 64) {
+                writeVarInt(DECIMAL);
+                writeVarLong(decimal.unscaledValue().longValue());
+            } else {
+                writeVarInt(BIG_DECIMAL);
+                writeBigInteger(decimal.unscaledValue());
+            }
+            writeVarLong(decimal.scale());
+        } else if (literal instanceof Character) {
+            writeVarInt(CHARACTER);
+            writeVarInt((Character) literal);
+        } else if (literal instanceof String) {
+            writeVarInt(STRING);
+            writeString((String) literal);
+        } else {
+            throw new IllegalArgumentException("Unsupported literal type: " + literal.getClass());
+        }
+    }
+
+    private void writeType(Environment.Type type) {
+        writeString(type.getName());
+    }
+
+    /**
+     * Writes the index of the variable plus one if it has already been
+     * written, or otherwise 0 followed by the variable.
+     */
+    private void writeVariable(Environment.Variable variable) {
+        if (writeBinding(variable)) {
+            writeString(variable.getName());
+            writeString(variable.getJvmName());
+            writeType(variable.getType());
+        }
+    }
+
+    /**
+     * Writes a function in the same way as {@link
+     * #writeVariable(Environment.Variable)}. Only its signature is written.
+     */
+    private void writeFunction(Environment.Function function) {
+        if (writeBinding(function)) {
+            writeString(function.getName());
+            writeString(function.getJvmName());
+            writeVarInt(function.getParameterTypes().size());
+            for (Environment.Type type : function.getParameterTypes()) {
+                writeType(type);
+            }
+            writeType(function.getReturnType());
+        }
+    }
+
+    /**
+     * Writes the reference to a binding, returning true if it is new and must
+     * be written in full.
+     */
+    private boolean writeBinding(Object binding) {
+        Integer index = bindings.get(binding);
+        if (index != null) {
+            writeVarInt(index + 1);
+            return false;
+        }
+        bindings.put(binding, bindings.size());
+        writeVarInt(0);
+        return true;
+    }
+
+    private void writeBigInteger(BigInteger integer) {
+        byte[] encoded = integer.toByteArray();
+        writeVarInt(encoded.length);
+        writeBytes(encoded, encoded.length);
+    }
+
+    private void writeStrings(List<String> strings) {
+        writeVarInt(strings.size());
+        for (String string : strings) {
+            writeString(string);
+        }
+    }
+
+    /**
+     * Writes the index of the string in the pool, adding it if necessary.
+     */
+    private void writeString(String string) {
+        Integer index = indices.get(string);
+        if (index == null) {
+            index = strings.size();
+            indices.put(string, index);
+            strings.add(string);
+        }
+        writeVarInt(index);
+    }
+
+    private void writeInt(int value) {
+        ensure(4);
+        bytes[length++] = (byte) (value >>> 24);
+        bytes[length++] = (byte) (value >>> 16);
+        bytes[length++] = (byte) (value >>> 8);
+        bytes[length++] = (byte) value;
+    }
+
+    /**
+     * Writes an unsigned integer in groups of 7 bits, least significant first,
+     * where the high bit of each byte is set if more bytes follow.
+     */
+    private void writeVarInt(int value) {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[length++] = (byte) value;
+    }
+
+    /**
+     * Writes a signed long as in {@link #writeVarInt(int)}, after zigzag
+     * encoding it so small negative values are also short.
+     */
+    private void writeVarLong(long value) {
+        ensure(10);
+        value = (value << 1) ^ (value >> 63);
+        while ((value & ~0x7FL) != 0) {
+            bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[length++] = (byte) value;
+    }
+
+    private void writeBytes(byte[] source, int count) {
+        ensure(count);
+        System.arraycopy(source, 0, bytes, length, count);
+        length += count;
+    }
+
+    private void ensure(int count) {
+        if (length + count > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, length + count));
+        }
+    }
+
+}
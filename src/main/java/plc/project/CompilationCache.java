@@ -0,0 +1,172 @@
+package plc.project;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of analyzed ASTs on disk, so unchanged sources are not lexed,
+ * parsed, and analyzed again. The directory may be shared by any number of
+ * processes.
+ *
+ * Each entry is a {@code .plcast} file written by {@link
+ * AstWriter#writeAnalyzed(Ast.Source)}, named by the SHA-256 hash of the
+ * {@link #VERSION} and the source. Entries are written to a temporary file
+ * and then moved into place, so readers only ever see complete files. The
+ * modification time of an entry is updated when it is used, and once the
+ * entries exceed the maximum size the least recently used are deleted.
+ */
+public final class CompilationCache {
+
+    /**
+     * The version of the compiler, which is part of the key of every entry.
+     * It must be changed whenever the lexer, parser, or analyzer change the
+     * trees they produce, so entries from older versions are not used.
+     */
+    public static final String VERSION = "1/" + AstWriter.VERSION;
+
+    private static final String EXTENSION = ".plcast";
+
+    /**
+     * The age after which temporary files are assumed to be left over from
+     * a process which failed while writing them, and are deleted.
+     */
+    private static final long TEMPORARY_EXPIRY = 60 * 60 * 1000;
+
+    private final Path directory;
+    private final long maxSize;
+
+    /**
+     * Creates a cache in the given directory (which is created if necessary)
+     * holding at most {@code maxSize} bytes of entries.
+     */
+    public CompilationCache(Path directory, long maxSize) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the analyzed AST of the source, from the cache if possible or
+     * otherwise by lexing, parsing, and analyzing it with a new {@link
+     * Analyzer} and adding it to the cache. Exceptions from the front-end are
+     * thrown as usual, and nothing is cached for the source.
+     */
+    public Ast.Source compile(String source) throws IOException {
+        Path file = directory.resolve(key(source) + EXTENSION);
+        Ast.Source ast = get(file);
+        if (ast == null) {
+            ast = new Parser(new Lexer(source).lex()).parseSource();
+            new Analyzer(new Scope(null)).visit(ast);
+            put(file, ast);
+            evict();
+        }
+        return ast;
+    }
+
+    /**
+     * Returns the entry in the given file and marks it as used, or returns
+     * null if it does not exist or could not be read (such as from an older
+     * version of the format).
+     */
+    private Ast.Source get(Path file) {
+        Ast.Source ast;
+        try {
+            ast = AstReader.read(file);
+        } catch (IOException e) {
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+            //the entry was evicted by another process after it was read
+        }
+        return ast;
+    }
+
+    private void put(Path file, Ast.Source ast) throws IOException {
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, AstWriter.writeAnalyzed(ast));
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the total size is at most
+     * the maximum, along with any expired temporary files. Entries which are
+     * deleted by another process in the meantime are ignored.
+     */
+    private void evict() throws IOException {
+        Map<Path, BasicFileAttributes> entries = new HashMap<>();
+        long size = 0;
+        long expiry = System.currentTimeMillis() - TEMPORARY_EXPIRY;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    if (name.endsWith(EXTENSION)) {
+                        entries.put(file, attributes);
+                        size += attributes.size();
+                    } else if (name.endsWith(".tmp") && attributes.lastModifiedTime().toMillis() < expiry) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (NoSuchFileException ignored) {}
+            }
+        }
+        if (size <= maxSize) {
+            return;
+        }
+        List<Path> order = new ArrayList<>(entries.keySet());
+        order.sort(Comparator.comparing(file -> entries.get(file).lastModifiedTime()));
+        for (int i = 0; i < order.size() && size > maxSize; i++) {
+            try {
+                Files.deleteIfExists(order.get(i));
+                size -= entries.get(order.get(i)).size();
+            } catch (IOException ignored) {
+                //the entry may be open in another process on some platforms
+            }
+        }
+    }
+
+    /**
+     * Returns the SHA-256 hash of the version and source in hexadecimal.
+     */
+    private static String key(String source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+        digest.update(VERSION.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        byte[] hash = digest.digest(source.getBytes(StandardCharsets.UTF_8));
+        StringBuilder builder = new StringBuilder(2 * hash.length);
+        for (byte b : hash) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+}
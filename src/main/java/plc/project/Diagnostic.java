@@ -0,0 +1,45 @@
+package plc.project;
+
+import java.util.Objects;
+
+/**
+ * An error recorded while lexing or parsing in recovering mode, with the same
+ * message and index as the {@link ParseException} which would otherwise be
+ * thrown.
+ */
+public final class Diagnostic {
+
+    private final String message;
+    private final int index;
+
+    public Diagnostic(String message, int index) {
+        this.message = message;
+        this.index = index;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Diagnostic
+                && message.equals(((Diagnostic) obj).message)
+                && index == ((Diagnostic) obj).index;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(message, index);
+    }
+
+    @Override
+    public String toString() {
+        return message + "@" + index;
+    }
+
+}
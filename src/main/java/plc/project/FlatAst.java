@@ -0,0 +1,774 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A compact form of an {@link Ast.Source}, storing the nodes as records of
+ * ints in a single array instead of as separate objects with lists and
+ * optionals, in the same way as {@link TokenBuffer} does for tokens. Names
+ * and other strings are kept once in a pool, as are literals which are not
+ * stored inline, and records refer to them by index.
+ *
+ * Each record starts with the id, start, and end of the node (see {@link
+ * Ast#getId()}), followed by its kind (such as {@link Ast#LITERAL}) and the
+ * fields below, where child nodes and optional strings are {@code -1} if
+ * absent and lists are a count followed by the elements. Each node is
+ * identified by the index of its kind. Records are in pre-order, so the first
+ * child of a node follows it directly.
+ *
+ * <pre>
+ * Source      field count, fields..., method count, methods...
+ * Field       name, type name, value?
+ * Method      name, return type name?, parameter count, parameters...,
+ *             parameter type name count, parameter type names...,
+ *             statement count, statements...
+ * Expression  expression
+ * Declaration name, type name?, value?
+ * Assignment  receiver, value
+ * If          condition, then count, statements..., else count, statements...
+ * For         name, value, statement count, statements...
+ * While       condition, statement count, statements...
+ * Return      value
+ * Error       message, index
+ * Literal     form, then a constant, long (two ints), or long and scale
+ * Group       expression
+ * Binary      operator, left, right
+ * Access      receiver?, name
+ * Function    receiver?, name, argument count, arguments...
+ * </pre>
+ *
+ * Nodes are read with the getters below, which mirror those of the {@link
+ * Ast} classes, or with a {@link Visitor}. The tree holds the syntax, ids, and
+ * spans of the source only; converting it back with {@link #toAst()} gives an
+ * equal tree with the same ids and spans, which can be analyzed again.
+ */
+public final class FlatAst {
+
+    private static final int NONE = -1;
+
+    /**
+     * The number of ints before the kind of each record, for the id, start,
+     * and end of the node.
+     */
+    private static final int SPAN = 3;
+
+    private static final int OBJECT = 0;
+    private static final int INTEGER = 1;
+    private static final int DECIMAL = 2;
+
+    /**
+     * The offset of the first list in the record of each kind of node.
+     */
+    private static final int[] LISTS = new int[16];
+
+    static {
+        LISTS[Ast.SOURCE] = 1;
+        LISTS[Ast.METHOD] = 3;
+        LISTS[Ast.IF] = 2;
+        LISTS[Ast.FOR] = 3;
+        LISTS[Ast.WHILE] = 2;
+        LISTS[Ast.FUNCTION] = 3;
+    }
+
+    private int[] nodes = new int[64];
+    private int size = 0;
+    private int count = 0;
+    private String[] strings;
+    private Object[] constants;
+
+    private final Map<String, Integer> stringIndices = new HashMap<>();
+    private final Map<Object, Integer> constantIndices = new HashMap<>();
+
+    private FlatAst() {}
+
+    /**
+     * Returns the flat form of the source.
+     */
+    public static FlatAst of(Ast.Source source) {
+        FlatAst ast = new FlatAst();
+        ast.add(source);
+        ast.nodes = Arrays.copyOf(ast.nodes, ast.size);
+        ast.strings = new String[ast.stringIndices.size()];
+        ast.stringIndices.forEach((string, index) -> ast.strings[index] = string);
+        ast.constants = new Object[ast.constantIndices.size()];
+        ast.constantIndices.forEach((constant, index) -> ast.constants[index] = constant);
+        ast.stringIndices.clear();
+        ast.constantIndices.clear();
+        return ast;
+    }
+
+    /**
+     * Returns the source as {@link Ast} nodes, equal to the source this was
+     * created from and with the same ids and spans.
+     */
+    public Ast.Source toAst() {
+        return (Ast.Source) toAst(getRoot());
+    }
+
+    /**
+     * Returns the given node and its children as {@link Ast} nodes.
+     */
+    public Ast toAst(int node) {
+        return new Converter().convert(node);
+    }
+
+    /**
+     * Returns the node of the source, which is the first record.
+     */
+    public int getRoot() {
+        return SPAN;
+    }
+
+    /**
+     * Returns the number of nodes.
+     */
+    public int getNodeCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of ints used by the records of the nodes.
+     */
+    public int getRecordSize() {
+        return size;
+    }
+
+    public int getKind(int node) {
+        return nodes[node];
+    }
+
+    /**
+     * Returns the id of the node, as in {@link Ast#getId()}.
+     */
+    public int getId(int node) {
+        return nodes[node - 3];
+    }
+
+    public int getStart(int node) {
+        return nodes[node - 2];
+    }
+
+    public int getEnd(int node) {
+        return nodes[node - 1];
+    }
+
+    /**
+     * Returns the name of a field, method, declaration, for loop, access, or
+     * function.
+     */
+    public String getName(int node) {
+        switch (nodes[node]) {
+            case Ast.ACCESS:
+            case Ast.FUNCTION:
+                return string(nodes[node + 2]);
+            default:
+                return string(nodes[node + 1]);
+        }
+    }
+
+    /**
+     * Returns the type name of a field or declaration, which for a
+     * declaration is null if absent.
+     */
+    public String getTypeName(int node) {
+        return string(nodes[node + 2]);
+    }
+
+    /**
+     * Returns the value of a field, declaration, assignment, for loop, or
+     * return, which for fields and declarations is -1 if absent.
+     */
+    public int getValue(int node) {
+        switch (nodes[node]) {
+            case Ast.FIELD:
+            case Ast.DECLARATION:
+                return nodes[node + 3];
+            case Ast.ASSIGNMENT:
+            case Ast.FOR:
+                return nodes[node + 2];
+            default:
+                return nodes[node + 1];
+        }
+    }
+
+    /**
+     * Returns the receiver of an assignment, access, or function, which for
+     * accesses and functions is -1 if absent.
+     */
+    public int getReceiver(int node) {
+        return nodes[node + 1];
+    }
+
+    /**
+     * Returns the expression of an expression statement or group.
+     */
+    public int getExpression(int node) {
+        return nodes[node + 1];
+    }
+
+    /**
+     * Returns the condition of an if or while statement.
+     */
+    public int getCondition(int node) {
+        return nodes[node + 1];
+    }
+
+    public int getFieldCount(int node) {
+        return nodes[list(node, 0)];
+    }
+
+    public int getField(int node, int index) {
+        return nodes[list(node, 0) + 1 + index];
+    }
+
+    public int getMethodCount(int node) {
+        return nodes[list(node, 1)];
+    }
+
+    public int getMethod(int node, int index) {
+        return nodes[list(node, 1) + 1 + index];
+    }
+
+    public int getParameterCount(int node) {
+        return nodes[list(node, 0)];
+    }
+
+    public String getParameter(int node, int index) {
+        return string(nodes[list(node, 0) + 1 + index]);
+    }
+
+    public int getParameterTypeNameCount(int node) {
+        return nodes[list(node, 1)];
+    }
+
+    public String getParameterTypeName(int node, int index) {
+        return string(nodes[list(node, 1) + 1 + index]);
+    }
+
+    /**
+     * Returns the return type name of a method, or null if absent.
+     */
+    public String getReturnTypeName(int node) {
+        return string(nodes[node + 2]);
+    }
+
+    /**
+     * Returns the number of statements of a method, for loop, or while loop,
+     * or of the then statements of an if statement.
+     */
+    public int getStatementCount(int node) {
+        return nodes[statements(node)];
+    }
+
+    public int getStatement(int node, int index) {
+        return nodes[statements(node) + 1 + index];
+    }
+
+    public int getElseStatementCount(int node) {
+        return nodes[list(node, 1)];
+    }
+
+    public int getElseStatement(int node, int index) {
+        return nodes[list(node, 1) + 1 + index];
+    }
+
+    public Diagnostic getDiagnostic(int node) {
+        return new Diagnostic(string(nodes[node + 1]), nodes[node + 2]);
+    }
+
+    /**
+     * Returns the value of a literal, as in {@link Ast.Expr.Literal#getLiteral()}.
+     */
+    public Object getLiteral(int node) {
+        switch (nodes[node + 1]) {
+            case INTEGER:
+                return BigInteger.valueOf(getLong(node));
+            case DECIMAL:
+                return BigDecimal.valueOf(getLong(node), nodes[node + 4]);
+            default:
+                return constants[nodes[node + 2]];
+        }
+    }
+
+    public String getOperator(int node) {
+        return string(nodes[node + 1]);
+    }
+
+    public int getLeft(int node) {
+        return nodes[node + 2];
+    }
+
+    public int getRight(int node) {
+        return nodes[node + 3];
+    }
+
+    public int getArgumentCount(int node) {
+        return nodes[list(node, 0)];
+    }
+
+    public int getArgument(int node, int index) {
+        return nodes[list(node, 0) + 1 + index];
+    }
+
+    /**
+     * Calls the method of the visitor for the kind of the node.
+     */
+    public <T> T visit(int node, Visitor<T> visitor) {
+        switch (nodes[node]) {
+            case Ast.SOURCE:
+                return visitor.visitSource(node);
+            case Ast.FIELD:
+                return visitor.visitField(node);
+            case Ast.METHOD:
+                return visitor.visitMethod(node);
+            case Ast.EXPRESSION:
+                return visitor.visitExpression(node);
+            case Ast.DECLARATION:
+                return visitor.visitDeclaration(node);
+            case Ast.ASSIGNMENT:
+                return visitor.visitAssignment(node);
+            case Ast.IF:
+                return visitor.visitIf(node);
+            case Ast.FOR:
+                return visitor.visitFor(node);
+            case Ast.WHILE:
+                return visitor.visitWhile(node);
+            case Ast.RETURN:
+                return visitor.visitReturn(node);
+            case Ast.ERROR:
+                return visitor.visitError(node);
+            case Ast.LITERAL:
+                return visitor.visitLiteral(node);
+            case Ast.GROUP:
+                return visitor.visitGroup(node);
+            case Ast.BINARY:
+                return visitor.visitBinary(node);
+            case Ast.ACCESS:
+                return visitor.visitAccess(node);
+            case Ast.FUNCTION:
+                return visitor.visitFunction(node);
+            default:
+                throw new AssertionError("Invalid node kind " + nodes[node] + ".");
+        }
+    }
+
+    private String string(int index) {
+        return index == NONE ? null : strings[index];
+    }
+
+    private long getLong(int node) {
+        return (long) nodes[node + 2] << 32 | nodes[node + 3] & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Returns the offset of the count of the given list in the record of the
+     * node.
+     */
+    private int list(int node, int index) {
+        int offset = node + LISTS[nodes[node]];
+        for (int i = 0; i < index; i++) {
+            offset += 1 + nodes[offset];
+        }
+        return offset;
+    }
+
+    private int statements(int node) {
+        return list(node, nodes[node] == Ast.METHOD ? 2 : 0);
+    }
+
+    /**
+     * Adds the record of the node and its children, returning its index.
+     */
+    private int add(Ast ast) {
+        switch (ast.kind) {
+            case Ast.SOURCE: {
+                Ast.Source source = (Ast.Source) ast;
+                int node = allocate(ast, 3 + source.getFields().size() + source.getMethods().size());
+                addAll(node + 1, source.getFields());
+                addAll(node + 2 + source.getFields().size(), source.getMethods());
+                return node;
+            }
+            case Ast.FIELD: {
+                Ast.Field field = (Ast.Field) ast;
+                int node = allocate(ast, 4);
+                nodes[node + 1] = addString(field.getName());
+                nodes[node + 2] = addString(field.getTypeName());
+                int value = addOptional(field.getValue());
+                nodes[node + 3] = value;
+                return node;
+            }
+            case Ast.METHOD: {
+                Ast.Method method = (Ast.Method) ast;
+                int parameters = method.getParameters().size();
+                int parameterTypeNames = method.getParameterTypeNames().size();
+                int node = allocate(ast, 6 + parameters + parameterTypeNames + method.getStatements().size());
+                nodes[node + 1] = addString(method.getName());
+                nodes[node + 2] = addString(method.getReturnTypeName().orElse(null));
+                addStrings(node + 3, method.getParameters());
+                addStrings(node + 4 + parameters, method.getParameterTypeNames());
+                addAll(node + 5 + parameters + parameterTypeNames, method.getStatements());
+                return node;
+            }
+            case Ast.EXPRESSION: {
+                int node = allocate(ast, 2);
+                int expression = add(((Ast.Stmt.Expression) ast).getExpression());
+                nodes[node + 1] = expression;
+                return node;
+            }
+            case Ast.DECLARATION: {
+                Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) ast;
+                int node = allocate(ast, 4);
+                nodes[node + 1] = addString(declaration.getName());
+                nodes[node + 2] = addString(declaration.getTypeName().orElse(null));
+                int value = addOptional(declaration.getValue());
+                nodes[node + 3] = value;
+                return node;
+            }
+            case Ast.ASSIGNMENT: {
+                int node = allocate(ast, 3);
+                int receiver = add(((Ast.Stmt.Assignment) ast).getReceiver());
+                nodes[node + 1] = receiver;
+                int value = add(((Ast.Stmt.Assignment) ast).getValue());
+                nodes[node + 2] = value;
+                return node;
+            }
+            case Ast.IF: {
+                Ast.Stmt.If stmt = (Ast.Stmt.If) ast;
+                int node = allocate(ast, 4 + stmt.getThenStatements().size() + stmt.getElseStatements().size());
+                int condition = add(stmt.getCondition());
+                nodes[node + 1] = condition;
+                addAll(node + 2, stmt.getThenStatements());
+                addAll(node + 3 + stmt.getThenStatements().size(), stmt.getElseStatements());
+                return node;
+            }
+            case Ast.FOR: {
+                Ast.Stmt.For stmt = (Ast.Stmt.For) ast;
+                int node = allocate(ast, 4 + stmt.getStatements().size());
+                nodes[node + 1] = addString(stmt.getName());
+                int value = add(stmt.getValue());
+                nodes[node + 2] = value;
+                addAll(node + 3, stmt.getStatements());
+                return node;
+            }
+            case Ast.WHILE: {
+                Ast.Stmt.While stmt = (Ast.Stmt.While) ast;
+                int node = allocate(ast, 3 + stmt.getStatements().size());
+                int condition = add(stmt.getCondition());
+                nodes[node + 1] = condition;
+                addAll(node + 2, stmt.getStatements());
+                return node;
+            }
+            case Ast.RETURN: {
+                int node = allocate(ast, 2);
+                int value = add(((Ast.Stmt.Return) ast).getValue());
+                nodes[node + 1] = value;
+                return node;
+            }
+            case Ast.ERROR: {
+                Diagnostic diagnostic = ((Ast.Stmt.Error) ast).getDiagnostic();
+                int node = allocate(ast, 3);
+                nodes[node + 1] = addString(diagnostic.getMessage());
+                nodes[node + 2] = diagnostic.getIndex();
+                return node;
+            }
+            case Ast.LITERAL:
+                return addLiteral((Ast.Expr.Literal) ast);
+            case Ast.GROUP: {
+                int node = allocate(ast, 2);
+                int expression = add(((Ast.Expr.Group) ast).getExpression());
+                nodes[node + 1] = expression;
+                return node;
+            }
+            case Ast.BINARY: {
+                Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+                int node = allocate(ast, 4);
+                nodes[node + 1] = addString(binary.getOperator());
+                int left = add(binary.getLeft());
+                nodes[node + 2] = left;
+                int right = add(binary.getRight());
+                nodes[node + 3] = right;
+                return node;
+            }
+            case Ast.ACCESS: {
+                Ast.Expr.Access access = (Ast.Expr.Access) ast;
+                int node = allocate(ast, 3);
+                int receiver = addOptional(access.getReceiver());
+                nodes[node + 1] = receiver;
+                nodes[node + 2] = addString(access.getName());
+                return node;
+            }
+            case Ast.FUNCTION: {
+                Ast.Expr.Function function = (Ast.Expr.Function) ast;
+                int node = allocate(ast, 4 + function.getArguments().size());
+                int receiver = addOptional(function.getReceiver());
+                nodes[node + 1] = receiver;
+                nodes[node + 2] = addString(function.getName());
+                addAll(node + 3, function.getArguments());
+                return node;
+            }
+            default:
+                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+        }
+    }
+
+    private int addLiteral(Ast.Expr.Literal literal) {
+        if (literal.isCompactInteger() || literal.isCompactDecimal()) {
+            int node = allocate(literal, literal.isCompactInteger() ? 4 : 5);
+            nodes[node + 1] = literal.isCompactInteger() ? INTEGER : DECIMAL;
+            nodes[node + 2] = (int) (literal.getCompactValue() >>> 32);
+            nodes[node + 3] = (int) literal.getCompactValue();
+            if (literal.isCompactDecimal()) {
+                nodes[node + 4] = literal.getCompactScale();
+            }
+            return node;
+        }
+        int node = allocate(literal, 3);
+        nodes[node + 1] = OBJECT;
+        nodes[node + 2] = constantIndices.computeIfAbsent(literal.getLiteral(), constant -> constantIndices.size());
+        return node;
+    }
+
+    /**
+     * Allocates a record of the given length (from its kind) for the node,
+     * setting its id, span, and kind.
+     */
+    private int allocate(Ast ast, int length) {
+        if (size + SPAN + length > nodes.length) {
+            nodes = Arrays.copyOf(nodes, Math.max(size + SPAN + length, 2 * nodes.length));
+        }
+        int node = size + SPAN;
+        nodes[node - 3] = ast.getId();
+        nodes[node - 2] = ast.getStart();
+        nodes[node - 1] = ast.getEnd();
+        nodes[node] = ast.kind;
+        size += SPAN + length;
+        count++;
+        return node;
+    }
+
+    /**
+     * Adds the nodes as a list at the given offset of a record, which has
+     * already been allocated. Children are added before being stored, since
+     * adding them may reallocate the array.
+     */
+    private void addAll(int offset, List<? extends Ast> children) {
+        nodes[offset] = children.size();
+        for (int i = 0; i < children.size(); i++) {
+            int child = add(children.get(i));
+            nodes[offset + 1 + i] = child;
+        }
+    }
+
+    private void addStrings(int offset, List<String> strings) {
+        nodes[offset] = strings.size();
+        for (int i = 0; i < strings.size(); i++) {
+            nodes[offset + 1 + i] = addString(strings.get(i));
+        }
+    }
+
+    private int addOptional(Optional<? extends Ast> ast) {
+        return ast.isPresent() ? add(ast.get()) : NONE;
+    }
+
+    private int addString(String string) {
+        return string == null ? NONE : stringIndices.computeIfAbsent(string, s -> stringIndices.size());
+    }
+
+    /**
+     * Visits the nodes of a flat tree by index, with a method for each kind
+     * of node as in {@link Ast.Visitor}.
+     */
+    public interface Visitor<T> {
+
+        T visitSource(int node);
+
+        T visitField(int node);
+
+        T visitMethod(int node);
+
+        T visitExpression(int node);
+
+        T visitDeclaration(int node);
+
+        T visitAssignment(int node);
+
+        T visitIf(int node);
+
+        T visitFor(int node);
+
+        T visitWhile(int node);
+
+        T visitReturn(int node);
+
+        /**
+         * As in {@link Ast.Visitor#visit(Ast.Stmt.Error)}, this throws an
+         * exception by default.
+         */
+        default T visitError(int node) {
+            throw new IllegalStateException("The statement failed to parse.");
+        }
+
+        T visitLiteral(int node);
+
+        T visitGroup(int node);
+
+        T visitBinary(int node);
+
+        T visitAccess(int node);
+
+        T visitFunction(int node);
+
+    }
+
+    /**
+     * Creates the {@link Ast} nodes of a flat tree.
+     */
+    private final class Converter implements Visitor<Ast> {
+
+        @Override
+        public Ast visitSource(int node) {
+            List<Ast.Field> fields = new ArrayList<>();
+            for (int i = 0; i < getFieldCount(node); i++) {
+                fields.add((Ast.Field) convert(getField(node, i)));
+            }
+            List<Ast.Method> methods = new ArrayList<>();
+            for (int i = 0; i < getMethodCount(node); i++) {
+                methods.add((Ast.Method) convert(getMethod(node, i)));
+            }
+            return new Ast.Source(fields, methods);
+        }
+
+        @Override
+        public Ast visitField(int node) {
+            return new Ast.Field(getName(node), getTypeName(node), optional(getValue(node)));
+        }
+
+        @Override
+        public Ast visitMethod(int node) {
+            List<String> parameters = new ArrayList<>();
+            for (int i = 0; i < getParameterCount(node); i++) {
+                parameters.add(getParameter(node, i));
+            }
+            List<String> parameterTypeNames = new ArrayList<>();
+            for (int i = 0; i < getParameterTypeNameCount(node); i++) {
+                parameterTypeNames.add(getParameterTypeName(node, i));
+            }
+            return new Ast.Method(getName(node), parameters, parameterTypeNames, Optional.ofNullable(getReturnTypeName(node)), statements(node));
+        }
+
+        @Override
+        public Ast visitExpression(int node) {
+            return new Ast.Stmt.Expression(expression(getExpression(node)));
+        }
+
+        @Override
+        public Ast visitDeclaration(int node) {
+            return new Ast.Stmt.Declaration(getName(node), Optional.ofNullable(getTypeName(node)), optional(getValue(node)));
+        }
+
+        @Override
+        public Ast visitAssignment(int node) {
+            return new Ast.Stmt.Assignment(expression(getReceiver(node)), expression(getValue(node)));
+        }
+
+        @Override
+        public Ast visitIf(int node) {
+            List<Ast.Stmt> elseStatements = new ArrayList<>();
+            for (int i = 0; i < getElseStatementCount(node); i++) {
+                elseStatements.add((Ast.Stmt) convert(getElseStatement(node, i)));
+            }
+            return new Ast.Stmt.If(expression(getCondition(node)), statements(node), elseStatements);
+        }
+
+        @Override
+        public Ast visitFor(int node) {
+            return new Ast.Stmt.For(getName(node), expression(getValue(node)), statements(node));
+        }
+
+        @Override
+        public Ast visitWhile(int node) {
+            return new Ast.Stmt.While(expression(getCondition(node)), statements(node));
+        }
+
+        @Override
+        public Ast visitReturn(int node) {
+            return new Ast.Stmt.Return(expression(getValue(node)));
+        }
+
+        @Override
+        public Ast visitError(int node) {
+            return new Ast.Stmt.Error(getDiagnostic(node));
+        }
+
+        @Override
+        public Ast visitLiteral(int node) {
+            switch (nodes[node + 1]) {
+                case INTEGER:
+                    return Ast.Expr.Literal.ofInteger(getLong(node));
+                case DECIMAL:
+                    return Ast.Expr.Literal.ofDecimal(getLong(node), nodes[node + 4]);
+                default:
+                    return new Ast.Expr.Literal(getLiteral(node));
+            }
+        }
+
+        @Override
+        public Ast visitGroup(int node) {
+            return new Ast.Expr.Group(expression(getExpression(node)));
+        }
+
+        @Override
+        public Ast visitBinary(int node) {
+            return new Ast.Expr.Binary(getOperator(node), expression(getLeft(node)), expression(getRight(node)));
+        }
+
+        @Override
+        public Ast visitAccess(int node) {
+            return new Ast.Expr.Access(optional(getReceiver(node)), getName(node));
+        }
+
+        @Override
+        public Ast visitFunction(int node) {
+            List<Ast.Expr> arguments = new ArrayList<>();
+            for (int i = 0; i < getArgumentCount(node); i++) {
+                arguments.add(expression(getArgument(node, i)));
+            }
+            return new Ast.Expr.Function(optional(getReceiver(node)), getName(node), arguments);
+        }
+
+        /**
+         * Creates the node and its children, with the id and span stored in
+         * its record.
+         */
+        private Ast convert(int node) {
+            Ast ast = visit(node, this);
+            ast.setSpan(getId(node), getStart(node), getEnd(node));
+            return ast;
+        }
+
+        private Ast.Expr expression(int node) {
+            return (Ast.Expr) convert(node);
+        }
+
+        private Optional<Ast.Expr> optional(int node) {
+            return node == NONE ? Optional.empty() : Optional.of(expression(node));
+        }
+
+        private List<Ast.Stmt> statements(int node) {
+            List<Ast.Stmt> statements = new ArrayList<>();
+            for (int i = 0; i < getStatementCount(node); i++) {
+                statements.add((Ast.Stmt) convert(getStatement(node, i)));
+            }
+            return statements;
+        }
+
+    }
+
+}
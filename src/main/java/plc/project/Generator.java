@@ -1,6 +1,7 @@
 package plc.project;
 
 import java.io.PrintWriter;
+import java.math.BigDecimal;
 
 public final class Generator implements Ast.Visitor<Void> {
 
@@ -194,7 +195,17 @@ public final class Generator implements Ast.Visitor<Void> {
 
     @Override
     public Void visit(Ast.Expr.Literal ast) {
-        if (ast.getLiteral() == null)
+        //compact literals are printed from their value, since getLiteral
+        //would create and keep a BigInteger or BigDecimal in the node
+        if (ast.isCompactInteger())
+        {
+            writer.write(Long.toString(ast.getCompactValue()));
+        }
+        else if (ast.isCompactDecimal())
+        {
+            printDecimal(ast.getCompactValue(), ast.getCompactScale());
+        }
+        else if (ast.getLiteral() == null)
         {
             print("null");
         }
@@ -215,6 +226,42 @@ public final class Generator implements Ast.Visitor<Void> {
         return null;
     }
 
+    /**
+     * Prints a decimal with the given unscaled value and scale in the same
+     * way as {@link BigDecimal#toString()}, which only uses an
+     * exponent for negative scales or values with more than six leading zeros
+     * after the point.
+     */
+    private void printDecimal(long unscaled, int scale) {
+        String digits = Long.toString(unscaled);
+        int sign = unscaled < 0 ? 1 : 0;
+        int length = digits.length() - sign;
+        if (scale < 0 || length - 1 - scale < -6)
+        {
+            writer.write(BigDecimal.valueOf(unscaled, scale).toString());
+        }
+        else if (scale == 0)
+        {
+            writer.write(digits);
+        }
+        else if (length > scale)
+        {
+            writer.write(digits, 0, digits.length() - scale);
+            writer.write('.');
+            writer.write(digits, digits.length() - scale, scale);
+        }
+        else
+        {
+            writer.write(digits, 0, sign);
+            writer.write("0.");
+            for (int i = length; i < scale; i++)
+            {
+                writer.write('0');
+            }
+            writer.write(digits, sign, length);
+        }
+    }
+
     @Override
     public Void visit(Ast.Expr.Group ast) {
         print("(",ast.getExpression(),")");
@@ -308,14 +308,14 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
             if (left.getClass().equals(BigInteger.class))
             {
                 requireType(BigInteger.class, visit(ast.getRight()));
-                if ((BigInteger)right == BigInteger.ZERO)
+                if (((BigInteger)right).signum() == 0)
                     throw new RuntimeException("Cannot divide by zero.");
                 return Environment.create(((BigInteger)left).divide((BigInteger)right));
             }
             if (left.getClass().equals(BigDecimal.class))
             {
                 requireType(BigDecimal.class, visit(ast.getRight()));
-                if ((BigDecimal)right == BigDecimal.ZERO)
+                if (((BigDecimal)right).signum() == 0)
                     throw new RuntimeException("Cannot divide by zero.");
                 BigDecimal quotient = ((BigDecimal)left).divide((BigDecimal) right, RoundingMode.HALF_EVEN);
                 return Environment.create(quotient);
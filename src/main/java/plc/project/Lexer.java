@@ -1,7 +1,25 @@
 package plc.project;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * The lexer works through three main functions:
@@ -10,38 +28,415 @@ import java.util.List;
  *  - {@link #lexToken()}, which lexes the next token
  *  - {@link CharStream}, which manages the state of the lexer and literals
  *
+ * Input can be given as a whole {@link String}, or streamed from a {@link
+ * Reader} or {@link ReadableByteChannel}. When streaming, {@link #iterator()}
+ * produces tokens on demand so only the current token and lookahead need to be
+ * held in memory. Files can also be memory-mapped with {@link #Lexer(Path)}, in
+ * which case tokens refer to slices of the mapping. Large fixed inputs can be
+ * lexed concurrently with {@link #lexParallel()}, and edited sources can be
+ * lexed incrementally with {@link #relex(List, int, int, int)}.
+ *
  * If the lexer fails to parse something (such as an unterminated string) you
  * should throw a {@link ParseException} with an index at the character which is
- * invalid or missing.
+ * invalid or missing. Alternatively, the lexer can recover from errors by
+ * setting a list of diagnostics with {@link #setDiagnostics(List)}, in which
+ * case each error is recorded as a {@link Diagnostic} and the invalid input is
+ * emitted as an {@link Token.Type#ERROR} token.
  *
  * The {@link #peek(String...)} and {@link #match(String...)} functions are
  * helpers you need to use, they will make the implementation a lot easier.
  */
 public final class Lexer {
 
+    /**
+     * Character classes used by the lexer, stored as bit flags in a table
+     * indexed by the (ASCII) character. Each class corresponds to one of the
+     * regex character classes in the grammar, so classification is a single
+     * array lookup rather than compiling and running a regex per character.
+     */
+    private static final int WHITESPACE = 1;
+    private static final int IDENTIFIER_START = 1 << 1;
+    private static final int IDENTIFIER_PART = 1 << 2;
+    private static final int DIGIT = 1 << 3;
+    private static final int SIGN = 1 << 4;
+    private static final int ESCAPE = 1 << 5;
+    private static final int COMPARISON = 1 << 6;
+    private static final int ANY = 1 << 7;
+
+    private static final int[] CLASSES = new int[128];
+
+    static {
+        define(WHITESPACE, " \b\n\r\t");
+        define(IDENTIFIER_START, "_");
+        define(IDENTIFIER_START, 'a', 'z');
+        define(IDENTIFIER_START, 'A', 'Z');
+        //[a-zA-z0-9-_], which includes everything from 'A' through 'z'
+        define(IDENTIFIER_PART, "-_");
+        define(IDENTIFIER_PART, 'A', 'z');
+        define(IDENTIFIER_PART, '0', '9');
+        define(DIGIT, '0', '9');
+        define(SIGN, "+-");
+        define(ESCAPE, "bnrt\'\"\\");
+        define(COMPARISON, "<>!=");
+        //the regex '.', which is everything except line terminators
+        define(ANY, (char) 0, (char) 127);
+        CLASSES['\n'] &= ~ANY;
+        CLASSES['\r'] &= ~ANY;
+    }
+
+    /**
+     * The minimum number of characters in each chunk lexed by {@link
+     * #lexParallel()}; smaller inputs are lexed sequentially.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
     private final CharStream chars;
+    private List<Diagnostic> diagnostics;
 
     public Lexer(String input) {
         chars = new CharStream(input);
     }
 
+    public Lexer(Reader reader) {
+        chars = new CharStream(reader);
+    }
+
+    public Lexer(ReadableByteChannel channel, Charset charset) {
+        this(Channels.newReader(channel, charset.newDecoder(), -1));
+    }
+
+    /**
+     * Lexes the given file by memory-mapping it. If the file is ASCII, tokens
+     * are slices of the mapping and their literal strings are only created
+     * when requested; otherwise, the file is decoded as UTF-8.
+     */
+    public Lexer(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            for (int i = 0; i < buffer.limit(); i++) {
+                if (buffer.get(i) < 0) {
+                    chars = new CharStream(StandardCharsets.UTF_8.decode(buffer).toString());
+                    return;
+                }
+            }
+            chars = new CharStream(new MappedInput(buffer, 0, buffer.limit()));
+        }
+    }
+
+    private Lexer(CharStream chars, List<Diagnostic> diagnostics) {
+        this.chars = chars;
+        this.diagnostics = diagnostics;
+    }
+
+    /**
+     * Sets the list errors are recorded in. If the list is not null, the lexer
+     * recovers from errors instead of throwing a {@link ParseException}:
+     *
+     *  - An invalid character literal is emitted as an ERROR token up to the
+     *    closing quote or the end of the line, whichever is first.
+     *  - A string literal with an invalid escape is emitted as an ERROR token
+     *    up to its closing quote.
+     *  - An unterminated string is emitted as an ERROR token up to the end of
+     *    the input, since strings may span lines.
+     *
+     * The first diagnostic is therefore the exception that would be thrown.
+     */
+    public void setDiagnostics(List<Diagnostic> diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
     /**
      * Repeatedly lexes the input using {@link #lexToken()}, also skipping over
      * whitespace where appropriate.
      */
     public List<Token> lex() {
         List<Token> tokenList = new ArrayList<Token>();
-        while(chars.has(0)) {
-            if (peek("[ \b\n\r\t]"))
-            {
-                chars.advance();
+        while(skipWhitespace()) {
+            chars.skip();
+            tokenList.add(lexToken());
+        }
+        return tokenList;
+    }
+
+    /**
+     * Lexes the input in the same way as {@link #lex()}, but records the tokens
+     * in a {@link TokenBuffer} instead of creating {@link Token} objects. This
+     * requires a fixed input, not one which is streamed from a reader.
+     */
+    public TokenBuffer lexBuffer() {
+        TokenBuffer buffer = new TokenBuffer(chars.getInput());
+        while(skipWhitespace()) {
+            chars.skip();
+            chars.emit(scanToken(), buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Lexes the input in the same way as {@link #lex()}, adding the tokens to
+     * the pipe as they are lexed so they can be parsed on another thread. The
+     * pipe is closed at the end of the input, or failed with any exception.
+     */
+    public void lex(TokenPipe pipe) {
+        try {
+            while (skipWhitespace()) {
+                chars.skip();
+                pipe.put(lexToken());
             }
-            else {
+            pipe.close();
+        } catch (RuntimeException e) {
+            pipe.fail(e);
+        }
+    }
+
+    /**
+     * Lexes the input in the same way as {@link #lex()} using the common
+     * {@link ForkJoinPool}.
+     */
+    public List<Token> lexParallel() {
+        return lexParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Lexes the input in the same way as {@link #lex()}, but splits it into
+     * chunks which are lexed concurrently in the given pool. This requires a
+     * fixed input, not one which is streamed from a reader.
+     *
+     * Chunks are split at line breaks (or other whitespace), which are almost
+     * always between tokens. Since a split could still fall inside of a string
+     * literal, each chunk is validated while the results are stitched together:
+     * a chunk is only used if it started at the same position the previous
+     * chunk ended at, and is otherwise lexed again from that position. The
+     * result, including any {@link ParseException}, is therefore identical to
+     * {@link #lex()}.
+     */
+    public List<Token> lexParallel(ForkJoinPool pool) {
+        CharSequence input = chars.getInput();
+        int start = chars.index;
+        int chunks = Math.min(pool.getParallelism() * 4, (input.length() - start) / PARALLEL_THRESHOLD);
+        if (chunks < 2) {
+            return lex();
+        }
+        int[] splits = split(input, start, chunks);
+        List<ForkJoinTask<Chunk>> tasks = new ArrayList<>();
+        for (int i = 0; i < splits.length - 1; i++) {
+            int from = splits[i];
+            int to = splits[i + 1];
+            tasks.add(pool.submit(() -> lexer(from).lexChunk(to)));
+        }
+        try {
+            List<Chunk> results = new ArrayList<>();
+            int position = start;
+            int size = 0;
+            for (int i = 0; i < tasks.size(); i++) {
+                Chunk chunk = tasks.get(i).join();
+                if (chunk.origin != position && chunk.start != position) {
+                    chunk = lexer(position).lexChunk(splits[i + 1]);
+                }
+                if (chunk.error != null) {
+                    throw chunk.error;
+                }
+                if (diagnostics != null) {
+                    diagnostics.addAll(chunk.lexer.diagnostics);
+                }
+                results.add(chunk);
+                position = chunk.end;
+                size += chunk.tokens.size();
+            }
+            List<Token> tokens = new ArrayList<>(size);
+            for (Chunk chunk : results) {
+                tokens.addAll(chunk.tokens);
+            }
+            chars.index = position;
+            chars.skip();
+            return tokens;
+        } finally {
+            for (ForkJoinTask<Chunk> task : tasks) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Lexes the input after an edit, reusing the tokens of the source before
+     * the edit so only the edited region is lexed again. The input of this
+     * lexer is the edited source, in which {@code removed} characters of the
+     * previous source at {@code offset} were replaced with {@code inserted}
+     * characters, and {@code previous} are the tokens of the previous source.
+     * This requires a fixed input, not one which is streamed from a reader.
+     *
+     * Tokens ending at least two characters before the edit (the most
+     * lookahead used by the lexer) are unaffected and kept. Lexing restarts
+     * after the last of these, and stops once a token starts past the edit at
+     * the same place a previous token did, as the rest of the input is then
+     * lexed the same way as before. Those tokens are reused with their index
+     * shifted by the change in length. The result is identical to {@link
+     * #lex()}, although when recovering from errors only diagnostics in the
+     * relexed region are recorded.
+     */
+    public List<Token> relex(List<Token> previous, int offset, int removed, int inserted) {
+        CharSequence input = chars.getInput();
+        if (offset < 0 || removed < 0 || inserted < 0 || offset + inserted > input.length()) {
+            throw new IllegalArgumentException("Invalid edit at " + offset + " for an input of length " + input.length() + ".");
+        }
+        int delta = inserted - removed;
+        int low = 0;
+        int high = previous.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            Token token = previous.get(middle);
+            if (token.getIndex() + token.getLiteral().length() + 2 <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        List<Token> tokens = new ArrayList<>(previous.subList(0, low));
+        int next = low;
+        if (low > 0) {
+            Token last = previous.get(low - 1);
+            chars.index = last.getIndex() + last.getLiteral().length();
+        } else {
+            chars.index = 0;
+        }
+        chars.skip();
+        while (skipWhitespace()) {
+            if (chars.index >= offset + inserted) {
+                int index = chars.index - delta;
+                while (next < previous.size() && previous.get(next).getIndex() < index) {
+                    next++;
+                }
+                if (next < previous.size() && previous.get(next).getIndex() == index) {
+                    for (Token token : previous.subList(next, previous.size())) {
+                        tokens.add(delta == 0 ? token : new Token(token.getType(), token.getLiteral(), token.getIndex() + delta));
+                    }
+                    chars.index = input.length();
+                    break;
+                }
+            }
+            chars.skip();
+            tokens.add(lexToken());
+        }
+        chars.skip();
+        return tokens;
+    }
+
+    /**
+     * Returns a lexer for a chunk of the input starting at the given index,
+     * which records diagnostics in its own list if this lexer is recovering.
+     */
+    private Lexer lexer(int index) {
+        return new Lexer(chars.at(index), diagnostics != null ? new ArrayList<>() : null);
+    }
+
+    /**
+     * Lexes tokens which start before the given index, recording the position
+     * of the first and next tokens and any exception instead of throwing it.
+     */
+    private Chunk lexChunk(int end) {
+        Chunk chunk = new Chunk(this, chars.index);
+        skipWhitespace();
+        chunk.start = chars.index;
+        try {
+            while (skipWhitespace() && chars.index < end) {
                 chars.skip();
-                tokenList.add(lexToken());
+                chunk.tokens.add(lexToken());
             }
+        } catch (ParseException e) {
+            chunk.error = e;
         }
-        return tokenList;
+        chunk.end = chars.index;
+        return chunk;
+    }
+
+    /**
+     * Returns the positions splitting the input into the given number of
+     * chunks (approximately), including the start and end of the input. Each
+     * split is at the first line break after the target position, or the first
+     * whitespace if there is no line break before the next target.
+     */
+    private static int[] split(CharSequence input, int start, int chunks) {
+        int[] splits = new int[chunks + 1];
+        int count = 0;
+        splits[count++] = start;
+        for (int i = 1; i < chunks; i++) {
+            int target = Math.max(start + (int) ((long) (input.length() - start) * i / chunks), splits[count - 1] + 1);
+            int limit = start + (int) ((long) (input.length() - start) * (i + 1) / chunks);
+            int whitespace = -1;
+            int split = -1;
+            for (int j = target; j < limit; j++) {
+                char c = input.charAt(j);
+                if (c == '\n') {
+                    split = j;
+                    break;
+                } else if (whitespace < 0 && c < CLASSES.length && (CLASSES[c] & WHITESPACE) != 0) {
+                    whitespace = j;
+                }
+            }
+            split = split >= 0 ? split : whitespace;
+            if (split >= 0) {
+                splits[count++] = split;
+            }
+        }
+        splits[count++] = input.length();
+        return Arrays.copyOf(splits, count);
+    }
+
+    /**
+     * Returns an iterator which lexes the remaining input one token at a time,
+     * in the same way as {@link #lex()}. A {@link ParseException} is thrown
+     * from {@link Iterator#next()} when the next token is invalid.
+     */
+    public Iterator<Token> iterator() {
+        return new Iterator<Token>() {
+
+            @Override
+            public boolean hasNext() {
+                return skipWhitespace();
+            }
+
+            @Override
+            public Token next() {
+                if (!skipWhitespace()) {
+                    throw new NoSuchElementException();
+                }
+                chars.skip();
+                return lexToken();
+            }
+
+        };
+    }
+
+    /**
+     * Returns a spliterator over the remaining tokens, as in {@link
+     * #iterator()}.
+     */
+    public Spliterator<Token> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * Advances past any whitespace, returning true if there is input left.
+     */
+    private boolean skipWhitespace() {
+        while (peekClass(0, WHITESPACE)) {
+            chars.advance();
+        }
+        return chars.has(0);
+    }
+
+    /**
+     * Advances past any whitespace to the start of the next token, returning
+     * false at the end of the input. This lets a single lexer call one of the
+     * individual lex methods for every token of a source, as the benchmarks
+     * do, where {@link #lex()} would choose the method itself.
+     */
+    boolean nextToken() {
+        if (!skipWhitespace()) {
+            return false;
+        }
+        chars.skip();
+        return true;
     }
 
     /**
@@ -53,88 +448,214 @@ public final class Lexer {
      * by {@link #lex()}
      */
     public Token lexToken() {
-        if (peek("[a-zA-Z_]")){
-            return lexIdentifier();
+        return chars.emit(scanToken());
+    }
+
+    public Token lexIdentifier() {
+        return chars.emit(scanIdentifier());
+    }
+
+    public Token lexNumber() {
+        return chars.emit(scanNumber());
+    }
+
+    public Token lexCharacter() {
+        return chars.emit(scanCharacter());
+    }
+
+    public Token lexString() {
+        return chars.emit(scanString());
+    }
+
+    public void lexEscape() {
+        throw new UnsupportedOperationException(); //TODO
+    }
+
+    public Token lexOperator() {
+        return chars.emit(scanOperator());
+    }
+
+    /**
+     * Scans the next token without emitting it, returning its type. The lex
+     * methods emit the scanned token as a {@link Token}, while {@link
+     * #lexBuffer()} records it in a {@link TokenBuffer} instead.
+     */
+    private Token.Type scanToken() {
+        if (peekClass(0, IDENTIFIER_START)){
+            return scanIdentifier();
         }
-        else if ((chars.has(1) && peek("[+-]","[0-9]")) || peek("[0-9]")){
-            return lexNumber();
+        else if ((peekClass(0, SIGN) && peekClass(1, DIGIT)) || peekClass(0, DIGIT)){
+            return scanNumber();
         }
-        else if (peek("[']")){
-            return lexCharacter();
+        else if (peekChar(0, '\'')){
+            return scanCharacter();
         }
-        else if (peek("[\"]")){
-            return lexString();
+        else if (peekChar(0, '"')){
+            return scanString();
         }
         else{
-            return lexOperator();
+            return scanOperator();
         }
     }
 
-    public Token lexIdentifier() {
+    private Token.Type scanIdentifier() {
         chars.advance();
-        while (chars.has(0) && match("[a-zA-z0-9-_]")){}
-        return chars.emit(Token.Type.IDENTIFIER);
+        while (matchClass(IDENTIFIER_PART)){}
+        return Token.Type.IDENTIFIER;
     }
 
-    public Token lexNumber() {
+    private Token.Type scanNumber() {
         chars.advance();
-        while(chars.has(0) && match("[0-9]")){}
-        if(chars.has(1) && match("[\\.]","[0-9]")){
-            while(chars.has(0) && match("[0-9]")){}
-            return chars.emit(Token.Type.DECIMAL);
+        while(matchClass(DIGIT)){}
+        if(peekChar(0, '.') && peekClass(1, DIGIT)){
+            chars.advance();
+            chars.advance();
+            while(matchClass(DIGIT)){}
+            return Token.Type.DECIMAL;
         }
-        return chars.emit(Token.Type.INTEGER);
+        return Token.Type.INTEGER;
     }
 
-    public Token lexCharacter() {
+    private Token.Type scanCharacter() {
         chars.advance();
-        if(chars.has(0) && match("[\\\\]")) {
-            if (chars.has(1) && match("[bnrt\'\"\\\\]", "[']")) {
-                return chars.emit(Token.Type.CHARACTER);
+        if(matchChar('\\')) {
+            if (peekClass(0, ESCAPE) && peekChar(1, '\'')) {
+                chars.advance();
+                chars.advance();
+                return Token.Type.CHARACTER;
             }
             else {
-                throw new ParseException("Invalid Escape Character", chars.index);
+                error("Invalid Escape Character");
+                return skipCharacter();
             }
         }
-        else if (chars.has(1) && match(".","[']")){
-            return chars.emit(Token.Type.CHARACTER);
+        else if (peekClass(0, ANY) && peekChar(1, '\'')){
+            chars.advance();
+            chars.advance();
+            return Token.Type.CHARACTER;
         }
         else{
-            throw new ParseException("Unterminated Character", chars.index);
+            error("Unterminated Character");
+            return skipCharacter();
         }
     }
 
-    public Token lexString() {
+    /**
+     * Recovers from an invalid character literal by advancing past the
+     * closing quote, or to the end of the line if there is none.
+     */
+    private Token.Type skipCharacter() {
+        while (peekClass(0, ANY) && !matchChar('\'')) {
+            chars.advance();
+        }
+        return Token.Type.ERROR;
+    }
+
+    private Token.Type scanString() {
+        boolean valid = true;
         chars.advance();
         while (chars.has(0)){
-            if (match("[\"]")){
-                return chars.emit(Token.Type.STRING);
+            if (matchChar('"')){
+                return valid ? Token.Type.STRING : Token.Type.ERROR;
             }
-            else if (match("[\\\\]")) {
-                if (match("[bnrt\'\"\\\\]")) {
+            else if (matchChar('\\')) {
+                if (matchClass(ESCAPE)) {
                 }
                 else{
-                    System.out.print(chars.index);
-                    throw new ParseException("Invalid Escape Character", chars.index);
+                    error("Invalid Escape Character");
+                    valid = false;
                 }
             }
             chars.advance();
         }
-        throw new ParseException("Unterminated String", chars.index);
+        error("Unterminated String");
+        //an escape at the end of the input advances one past its end
+        while (!chars.has(-1)) {
+            chars.index--;
+            chars.length--;
+        }
+        return Token.Type.ERROR;
     }
 
-    public void lexEscape() {
-        throw new UnsupportedOperationException(); //TODO
+    private Token.Type scanOperator() {
+        if(matchClass(COMPARISON)){
+            matchChar('=');
+            return Token.Type.OPERATOR;
+        }
+        else{
+            chars.advance();
+            return Token.Type.OPERATOR;
+        }
     }
 
-    public Token lexOperator() {
-        if(match("[<>!=]")){
-            match("=");
-            return chars.emit(Token.Type.OPERATOR);
+    /**
+     * Throws a {@link ParseException} at the current index, or records it as a
+     * diagnostic if the lexer is recovering from errors.
+     */
+    private void error(String message) {
+        if (diagnostics == null) {
+            throw new ParseException(message, chars.index);
         }
-        else{
+        diagnostics.add(new Diagnostic(message, chars.index));
+    }
+
+    /**
+     * Returns true if the character at the given offset exists and belongs to
+     * the given character class. Only the regex '.' class contains characters
+     * outside of ASCII, which is handled by the slow path.
+     */
+    private boolean peekClass(int offset, int charClass) {
+        if (!chars.has(offset)) {
+            return false;
+        }
+        char c = chars.get(offset);
+        if (c < CLASSES.length) {
+            return (CLASSES[c] & charClass) != 0;
+        }
+        return (charClass & ANY) != 0 && c != '\u0085' && c != '\u2028' && c != '\u2029';
+    }
+
+    /**
+     * Returns true if the character at the given offset exists and is the given
+     * character.
+     */
+    private boolean peekChar(int offset, char c) {
+        return chars.has(offset) && chars.get(offset) == c;
+    }
+
+    /**
+     * As {@link #peekClass(int, int)} for the next character, advancing past it
+     * if it matches.
+     */
+    private boolean matchClass(int charClass) {
+        boolean peek = peekClass(0, charClass);
+        if (peek) {
             chars.advance();
-            return chars.emit(Token.Type.OPERATOR);
+        }
+        return peek;
+    }
+
+    /**
+     * As {@link #peekChar(int, char)} for the next character, advancing past it
+     * if it matches.
+     */
+    private boolean matchChar(char c) {
+        boolean peek = peekChar(0, c);
+        if (peek) {
+            chars.advance();
+        }
+        return peek;
+    }
+
+    private static void define(int charClass, String members) {
+        for (int i = 0; i < members.length(); i++) {
+            CLASSES[members.charAt(i)] |= charClass;
+        }
+    }
+
+    private static void define(int charClass, char first, char last) {
+        for (char c = first; c <= last; c++) {
+            CLASSES[c] |= charClass;
         }
     }
 
@@ -168,30 +689,127 @@ public final class Lexer {
         return peek;
     }
 
+    /**
+     * The tokens lexed from one chunk by {@link #lexParallel(ForkJoinPool)}.
+     * The chunk begins at {@code origin}, its first token (if any) is at {@code
+     * start}, and the token after the chunk is at {@code end}.
+     */
+    private static final class Chunk {
+
+        private final Lexer lexer;
+        private final List<Token> tokens = new ArrayList<>();
+        private final int origin;
+        private int start;
+        private int end;
+        private ParseException error;
+
+        private Chunk(Lexer lexer, int origin) {
+            this.lexer = lexer;
+            this.origin = origin;
+        }
+
+    }
+
+    /**
+     * An ASCII source read directly from a (mapped) byte buffer, where each
+     * byte is one character.
+     */
+    private static final class MappedInput implements CharSequence {
+
+        private final ByteBuffer buffer;
+        private final int offset;
+        private final int length;
+
+        private MappedInput(ByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) buffer.get(offset + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new MappedInput(buffer, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[length];
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(offset);
+            slice.get(bytes);
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+
+    }
+
     /**
      * A helper class maintaining the input string, current index of the char
      * stream, and the current length of the token being matched.
      *
+     * When reading from a {@link Reader}, the input is a window of the source
+     * starting at {@code base}. The window is refilled as lookahead requires
+     * and characters before the current token are discarded, so memory is
+     * bounded by the longest token rather than the size of the source. Fixed
+     * inputs other than strings, such as mapped files, emit tokens holding a
+     * slice of the input rather than a copy.
+     *
      * You should rely on peek/match for state management in nearly all cases.
      * The only field you need to access is {@link #index} for any {@link
      * ParseException} which is thrown.
      */
     public static final class CharStream {
 
-        private final String input;
+        private static final int CHUNK_SIZE = 8192;
+
+        private final CharSequence input;
+        private final Reader reader;
+        private final StringBuilder window;
+        private final char[] chunk;
+        private final boolean slices;
+        private int base = 0;
         private int index = 0;
         private int length = 0;
 
         public CharStream(String input) {
+            this(input, false);
+        }
+
+        public CharStream(CharSequence input) {
+            this(input, true);
+        }
+
+        public CharStream(Reader reader) {
+            this.window = new StringBuilder();
+            this.input = window;
+            this.reader = reader;
+            this.chunk = new char[CHUNK_SIZE];
+            this.slices = false;
+        }
+
+        private CharStream(CharSequence input, boolean slices) {
             this.input = input;
+            this.reader = null;
+            this.window = null;
+            this.chunk = null;
+            this.slices = slices;
         }
 
         public boolean has(int offset) {
-            return index + offset < input.length();
+            return index + offset - base < input.length() || fill(index + offset - base);
         }
 
         public char get(int offset) {
-            return input.charAt(index + offset);
+            return input.charAt(index + offset - base);
         }
 
         public void advance() {
@@ -206,7 +824,69 @@ public final class Lexer {
         public Token emit(Token.Type type) {
             int start = index - length;
             skip();
-            return new Token(type, input.substring(start, index), start);
+            if (slices) {
+                return new Token(type, input, start, index - start);
+            }
+            return new Token(type, input.subSequence(start - base, index - base).toString(), start);
+        }
+
+        /**
+         * Records the current token in the buffer, in the same way as {@link
+         * #emit(Token.Type)}.
+         */
+        public void emit(Token.Type type, TokenBuffer buffer) {
+            int start = index - length;
+            skip();
+            buffer.add(type, start, index - start);
+        }
+
+        /**
+         * Returns a new char stream over the same (fixed) input starting at
+         * the given index.
+         */
+        private CharStream at(int index) {
+            CharStream stream = new CharStream(getInput(), slices);
+            stream.index = index;
+            return stream;
+        }
+
+        /**
+         * Returns the entire input, which is only available if it is not being
+         * streamed from a reader.
+         */
+        public CharSequence getInput() {
+            if (reader != null) {
+                throw new IllegalStateException("The input is streamed from a reader.");
+            }
+            return input;
+        }
+
+        /**
+         * Reads from the reader until the window contains the given position,
+         * returning false if the input ends first.
+         */
+        private boolean fill(int position) {
+            if (reader == null) {
+                return false;
+            }
+            int discard = index - length - base;
+            if (discard > 0) {
+                window.delete(0, discard);
+                base += discard;
+                position -= discard;
+            }
+            try {
+                while (position >= window.length()) {
+                    int read = reader.read(chunk);
+                    if (read < 0) {
+                        return false;
+                    }
+                    window.append(chunk, 0, read);
+                }
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         }
 
     }
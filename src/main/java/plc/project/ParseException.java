@@ -9,6 +9,15 @@ public final class ParseException extends RuntimeException {
         this.index = index;
     }
 
+    /**
+     * Creates an exception without a stack trace, for errors which the parser
+     * recovers from instead of throwing to the caller.
+     */
+    ParseException(String message, int index, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+        this.index = index;
+    }
+
     public int getIndex() {
         return index;
     }
@@ -4,9 +4,14 @@ package plc.project;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * The parser takes the sequence of tokens emitted by the lexer and turns that
@@ -15,88 +20,578 @@ import java.util.Optional;
  *
  * The parser has a similar architecture to the lexer, just with {@link Token}s
  * instead of characters. As before, {@link #peek(Object...)} and {@link
- * #match(Object...)} are helpers to make the implementation easier.
+ * #match(Object...)} are helpers to make the implementation easier. Patterns
+ * used in the parse loops are compiled ahead of time into {@link TokenPattern}s,
+ * and single token types have their own overloads, so matching allocates
+ * nothing.
  *
  * This type of parser is called <em>recursive descent</em>. Each rule in our
  * grammar will have it's own function, and reference to other rules correspond
  * to calling that functions.
+ *
+ * Each node is given an id and the span of its tokens in the source (see
+ * {@link Ast#getId()}). Ids are assigned from 0 as each node is completed, so
+ * children come before their parents and the {@link Ast.Source} is last. They
+ * are dense, with the id of the source one less than the number of nodes,
+ * except that:
+ *
+ *  - Nodes discarded when recovering from an error (see {@link
+ *    #setDiagnostics(List)}) leave gaps.
+ *  - With an {@link AstInterner}, ids are taken from the interner, so they
+ *    are unique and dense over all of the sources parsed with it (see {@link
+ *    AstInterner#getIdCount()}). Shared nodes keep the id and span of their
+ *    first occurrence.
  */
 public final class Parser {
 
+    private static final int PIPE_CAPACITY = 8192;
+
+    /**
+     * The minimum number of tokens in each task of {@link
+     * #parseSourceParallel()}; smaller sources are parsed sequentially.
+     */
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    private static final TokenPattern TYPE = TokenPattern.of(":", Token.Type.IDENTIFIER);
+    private static final TokenPattern ACCESS = TokenPattern.of(".", Token.Type.IDENTIFIER);
+    private static final TokenPattern CALL = TokenPattern.of(".", Token.Type.IDENTIFIER, "(");
+
     private final TokenStream tokens;
+    private boolean stackSafe = false;
+    private List<Diagnostic> diagnostics;
+    private AstInterner interner;
+    private int nextId = 0;
 
     public Parser(List<Token> tokens) {
         this.tokens = new TokenStream(tokens);
     }
 
+    public Parser(TokenBuffer tokens) {
+        this.tokens = new TokenStream(tokens);
+    }
+
+    /**
+     * Creates a parser which takes tokens from the pipe as they are needed,
+     * while they are lexed on another thread.
+     */
+    public Parser(TokenPipe tokens) {
+        this.tokens = new TokenStream(tokens);
+    }
+
+    private Parser(TokenStream tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Sets whether nested expressions and blocks are parsed with a stack on
+     * the heap instead of recursive calls. In this mode the nesting depth is
+     * only limited by memory, not the size of the thread's stack, and the
+     * result (including any exception) is otherwise the same.
+     */
+    public void setStackSafe(boolean stackSafe) {
+        this.stackSafe = stackSafe;
+    }
+
+    /**
+     * Sets the list errors are recorded in. If the list is not null, the
+     * parser recovers from errors instead of throwing a {@link
+     * ParseException}, so all of the errors are found in one pass:
+     *
+     *  - A statement which fails to parse is replaced by an {@link
+     *    Ast.Stmt.Error}, and tokens are skipped until after a ';' or before
+     *    the END or ELSE of the block or the start of another statement.
+     *  - A field or method which fails to parse (other than in the statements
+     *    of a method) is dropped, and tokens are skipped until the next LET or
+     *    DEF outside of any block.
+     *
+     * Nested blocks are skipped over as a whole. The first diagnostic is
+     * therefore the exception that would be thrown, and the same error found
+     * by several enclosing rules (such as a missing END at the end of the
+     * tokens) is only recorded once. Sources are always parsed sequentially.
+     */
+    public void setDiagnostics(List<Diagnostic> diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    /**
+     * Sets the interner literals, groups, and binary expressions are passed
+     * through as they are parsed, so identical subexpressions are the same
+     * object (see {@link AstInterner}). If the interner is not null, sources
+     * are always parsed sequentially, and ids are taken from the interner.
+     */
+    public void setInterner(AstInterner interner) {
+        this.interner = interner;
+    }
+
+    /**
+     * Lexes and parses the {@code source} rule at the same time, with the
+     * lexer on a separate (daemon) thread.
+     */
+    public static Ast.Source parsePipelined(Lexer lexer) throws ParseException {
+        return parsePipelined(lexer, runnable -> {
+            Thread thread = new Thread(runnable, "Lexer");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * Lexes and parses the {@code source} rule at the same time, with the
+     * lexer running on the given executor and passing tokens to the parser
+     * through a {@link TokenPipe}. The result is the same as parsing the
+     * tokens from {@link Lexer#lex()}: in particular, if parsing fails the
+     * rest of the input is lexed so an exception from the lexer takes
+     * precedence, as it would have been thrown first.
+     */
+    public static Ast.Source parsePipelined(Lexer lexer, Executor executor) throws ParseException {
+        TokenPipe pipe = new TokenPipe(PIPE_CAPACITY);
+        executor.execute(() -> lexer.lex(pipe));
+        try {
+            return new Parser(pipe).parseSource();
+        } catch (RuntimeException e) {
+            Token[] discard = new Token[PIPE_CAPACITY];
+            while (pipe.take(discard, 0, discard.length) >= 0) {}
+            throw e;
+        } finally {
+            pipe.cancel();
+        }
+    }
+
     /**
      * Parses the {@code source} rule.
      */
     public Ast.Source parseSource() throws ParseException {
+        int begin = nextStart();
         List<Ast.Field> fields = new ArrayList<>();
         List<Ast.Method> methods = new ArrayList<>();
         while (tokens.has(0)) {
-            if (match("LET")) {
-                if (methods.size() > 0)
-                {
-                    throw new ParseException("Expected Method", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+            int start = tokens.index;
+            try {
+                parseMember(fields, methods);
+            } catch (ParseException e) {
+                if (diagnostics == null)
+                    throw e;
+                record(e);
+                synchronize(start, true);
+            }
+        }
+        return span(new Ast.Source(fields,methods), begin);
+        }
+
+    /**
+     * Parses the next field or method of the {@code source} rule.
+     */
+    private void parseMember(List<Ast.Field> fields, List<Ast.Method> methods) throws ParseException {
+        if (match(TokenCode.LET)) {
+            if (methods.size() > 0)
+            {
+                throw error("Expected Method", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+            }
+            Ast.Field field = parseField();
+            fields.add(field);
+        }
+        else if (match(TokenCode.DEF)) {
+            Ast.Method method = parseMethod();
+            methods.add(method);
+        }
+        else if (diagnostics != null && tokens.index == 0)
+            //there is no previous token to report the error after
+            throw error("Expected Method", tokens.get(0).getIndex());
+        else if (!peek(TokenCode.DEF) || !peek(TokenCode.LET))
+            throw error("Expected Method", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+    }
+
+    /**
+     * Parses the {@code source} rule in the same way as {@link #parseSource()}
+     * using the common {@link ForkJoinPool}.
+     */
+    public Ast.Source parseSourceParallel() throws ParseException {
+        return parseSourceParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses the {@code source} rule in the same way as {@link #parseSource()},
+     * but parses fields and methods concurrently in the given pool.
+     *
+     * The tokens are first scanned for the span of each field (from LET to the
+     * next ';') and method (from DEF to the END balancing its DO, counting the
+     * DO and END of nested statements). Groups of spans are then parsed by
+     * separate parsers limited to those tokens. If the scan finds anything
+     * unexpected, or any span fails to parse or does not end where the scan
+     * did, the source is parsed again sequentially, so the result (including
+     * any exception) is the same as {@link #parseSource()}. The nodes of each
+     * group are numbered from 0, and then renumbered after those of the groups
+     * before it, so the ids are the same as well.
+     */
+    public Ast.Source parseSourceParallel(ForkJoinPool pool) throws ParseException {
+        int start = tokens.index;
+        if (tokens.pipe != null || diagnostics != null || interner != null || tokens.size - start < 2 * PARALLEL_THRESHOLD) {
+            return parseSource();
+        }
+        int[] spans = scanSpans();
+        if (spans == null) {
+            return parseSource();
+        }
+        List<ForkJoinTask<Ast.Source>> tasks = new ArrayList<>();
+        for (int first = 0; first < spans.length - 1;) {
+            int last = first + 1;
+            while (last < spans.length - 1 && spans[last] - spans[first] < PARALLEL_THRESHOLD) {
+                last++;
+            }
+            int[] group = Arrays.copyOfRange(spans, first, last + 1);
+            tasks.add(pool.submit(() -> {
+                Parser parser = new Parser(new TokenStream(tokens, group[0], group[group.length - 1]));
+                parser.stackSafe = stackSafe;
+                return parser.parseSpans(group);
+            }));
+            first = last;
+        }
+        int begin = nextStart();
+        List<Ast.Field> fields = new ArrayList<>();
+        List<Ast.Method> methods = new ArrayList<>();
+        List<ForkJoinTask<?>> renumbering = new ArrayList<>();
+        int shift = nextId;
+        for (ForkJoinTask<Ast.Source> task : tasks) {
+            Ast.Source source = task.join();
+            if (source == null) {
+                tasks.forEach(t -> t.cancel(false));
+                renumbering.forEach(t -> t.cancel(false));
+                tokens.index = start;
+                return parseSource();
+            }
+            if (shift > 0) {
+                int groupShift = shift;
+                renumbering.add(pool.submit(() -> {
+                    int id = groupShift;
+                    for (Ast.Field field : source.getFields()) {
+                        id = renumber(field, id, 0);
+                    }
+                    for (Ast.Method method : source.getMethods()) {
+                        id = renumber(method, id, 0);
+                    }
+                }));
+            }
+            shift += source.getId();
+            fields.addAll(source.getFields());
+            methods.addAll(source.getMethods());
+        }
+        renumbering.forEach(ForkJoinTask::join);
+        nextId = shift;
+        tokens.index = tokens.size;
+        return span(new Ast.Source(fields, methods), begin);
+    }
+
+    /**
+     * Numbers the nodes of the tree from the given id in the order they are
+     * completed by the parser (children in order, then their parent), adding
+     * the delta to the start and end of each, and returns the next id. This
+     * uses a stack on the heap since the tree may be deeper than the thread's
+     * stack allows: popping a node and pushing its children visits the
+     * reverse of that order.
+     */
+    private static int renumber(Ast root, int id, int delta) {
+        ArrayDeque<Ast> stack = new ArrayDeque<>();
+        List<Ast> nodes = new ArrayList<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Ast ast = stack.pop();
+            nodes.add(ast);
+            switch (ast.kind) {
+                case Ast.FIELD:
+                    ((Ast.Field) ast).getValue().ifPresent(stack::push);
+                    break;
+                case Ast.METHOD:
+                    ((Ast.Method) ast).getStatements().forEach(stack::push);
+                    break;
+                case Ast.EXPRESSION:
+                    stack.push(((Ast.Stmt.Expression) ast).getExpression());
+                    break;
+                case Ast.DECLARATION:
+                    ((Ast.Stmt.Declaration) ast).getValue().ifPresent(stack::push);
+                    break;
+                case Ast.ASSIGNMENT:
+                    stack.push(((Ast.Stmt.Assignment) ast).getReceiver());
+                    stack.push(((Ast.Stmt.Assignment) ast).getValue());
+                    break;
+                case Ast.IF:
+                    stack.push(((Ast.Stmt.If) ast).getCondition());
+                    ((Ast.Stmt.If) ast).getThenStatements().forEach(stack::push);
+                    ((Ast.Stmt.If) ast).getElseStatements().forEach(stack::push);
+                    break;
+                case Ast.FOR:
+                    stack.push(((Ast.Stmt.For) ast).getValue());
+                    ((Ast.Stmt.For) ast).getStatements().forEach(stack::push);
+                    break;
+                case Ast.WHILE:
+                    stack.push(((Ast.Stmt.While) ast).getCondition());
+                    ((Ast.Stmt.While) ast).getStatements().forEach(stack::push);
+                    break;
+                case Ast.RETURN:
+                    stack.push(((Ast.Stmt.Return) ast).getValue());
+                    break;
+                case Ast.GROUP:
+                    stack.push(((Ast.Expr.Group) ast).getExpression());
+                    break;
+                case Ast.BINARY:
+                    stack.push(((Ast.Expr.Binary) ast).getLeft());
+                    stack.push(((Ast.Expr.Binary) ast).getRight());
+                    break;
+                case Ast.ACCESS:
+                    ((Ast.Expr.Access) ast).getReceiver().ifPresent(stack::push);
+                    break;
+                case Ast.FUNCTION:
+                    ((Ast.Expr.Function) ast).getReceiver().ifPresent(stack::push);
+                    ((Ast.Expr.Function) ast).getArguments().forEach(stack::push);
+                    break;
+            }
+        }
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            Ast ast = nodes.get(i);
+            ast.setSpan(id++, ast.getStart() + delta, ast.getEnd() + delta);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the index of the first token of each field and method from the
+     * current token, followed by the number of tokens, or null if the tokens
+     * are not a sequence of fields followed by methods.
+     */
+    private int[] scanSpans() {
+        int[] spans = new int[16];
+        int count = 0;
+        boolean method = false;
+        int i = tokens.index;
+        while (i < tokens.size) {
+            if (count + 1 == spans.length) {
+                spans = Arrays.copyOf(spans, spans.length * 2);
+            }
+            spans[count++] = i;
+            int code = tokens.getCode(i - tokens.index);
+            if (code == TokenCode.LET && !method) {
+                while (++i < tokens.size && tokens.getCode(i - tokens.index) != TokenCode.SEMICOLON) {}
+            } else if (code == TokenCode.DEF) {
+                method = true;
+                int depth = 0;
+                while (++i < tokens.size) {
+                    code = tokens.getCode(i - tokens.index);
+                    if (code == TokenCode.DO) {
+                        depth++;
+                    } else if (code == TokenCode.END && --depth <= 0) {
+                        break;
+                    }
                 }
-                Ast.Field field = parseField();
-                fields.add(field);
+            } else {
+                return null;
             }
-            else if (match("DEF")) {
-                Ast.Method method = parseMethod();
-                methods.add(method);
+            if (i == tokens.size) {
+                return null;
+            }
+            i++;
+        }
+        spans[count++] = tokens.size;
+        return Arrays.copyOf(spans, count);
+    }
+
+    /**
+     * Parses the fields and methods starting at each of the given indices
+     * (followed by the end of the last), returning null if any of them fails
+     * or does not end at the start of the next.
+     */
+    private Ast.Source parseSpans(int[] spans) {
+        List<Ast.Field> fields = new ArrayList<>();
+        List<Ast.Method> methods = new ArrayList<>();
+        for (int i = 0; i < spans.length - 1; i++) {
+            Ast ast = parseSpan(spans[i + 1]);
+            if (ast == null) {
+                return null;
+            } else if (ast instanceof Ast.Field) {
+                fields.add((Ast.Field) ast);
+            } else {
+                methods.add((Ast.Method) ast);
             }
-            else if (!peek("DEF") || !peek("LET"))
-                throw new ParseException("Expected Method", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
         }
-        return new Ast.Source(fields,methods);
+        //numbered after the fields and methods, so its id is their number of nodes
+        return span(new Ast.Source(fields, methods), -1);
+    }
+
+    /**
+     * Parses the field or method starting at the current token, returning null
+     * if it fails or does not end at the given index.
+     */
+    private Ast parseSpan(int end) {
+        try {
+            Ast ast = match(TokenCode.LET) ? parseField() : match(TokenCode.DEF) ? parseMethod() : null;
+            return tokens.index == end ? ast : null;
+        } catch (RuntimeException e) {
+            return null;
         }
+    }
+
+    /**
+     * Parses the {@code source} rule after an edit, reusing the fields and
+     * methods of the previous source which are not affected by it. The tokens
+     * of this parser are those of the edited source, in which {@code removed}
+     * characters of the previous source at {@code offset} were replaced with
+     * {@code inserted} characters (as in {@link Lexer#relex(List, int, int,
+     * int)}), and {@code previousTokens} are the tokens of the previous source.
+     *
+     * The tokens are split into fields and methods as in {@link
+     * #parseSourceParallel(ForkJoinPool)}. A field or method whose tokens are
+     * unchanged by the edit, and not separated by it, is the same object as in
+     * the previous source, and only the others are parsed. If the tokens can't be split or any part
+     * fails to parse, the source is parsed again in full, so the result is
+     * always equal to {@link #parseSource()}.
+     *
+     * The nodes of the source are then renumbered, and the spans of reused
+     * nodes moved to their position in the edited source, so the ids and spans
+     * are also the same as {@link #parseSource()}. Reused nodes are updated in
+     * place, so the ids and spans of the previous source are out of date
+     * afterwards. Parsers with an {@link AstInterner} always parse the source
+     * in full, since the shared nodes may be part of other sources.
+     */
+    public Ast.Source reparseSource(Ast.Source previous, List<Token> previousTokens, int offset, int removed, int inserted) throws ParseException {
+        int start = tokens.index;
+        if (tokens.pipe != null || diagnostics != null || interner != null) {
+            return parseSource();
+        }
+        int[] spans = scanSpans();
+        int[] previousSpans = new Parser(previousTokens).scanSpans();
+        List<Ast> previousNodes = new ArrayList<>(previous.getFields());
+        previousNodes.addAll(previous.getMethods());
+        if (spans == null || previousSpans == null || previousSpans.length - 1 != previousNodes.size()) {
+            return parseSource();
+        }
+        int begin = nextStart();
+        int first = nextId;
+        List<Ast.Field> fields = new ArrayList<>();
+        List<Ast.Method> methods = new ArrayList<>();
+        int[] deltas = new int[spans.length - 1];
+        for (int i = 0; i < spans.length - 1; i++) {
+            Ast ast = reuseSpan(spans[i], spans[i + 1], previousTokens, previousSpans, previousNodes, offset, inserted - removed, inserted);
+            if (ast == null) {
+                tokens.index = spans[i];
+                ast = parseSpan(spans[i + 1]);
+            } else {
+                deltas[i] = tokens.getStart(spans[i] - tokens.index) - ast.getStart();
+            }
+            if (ast == null) {
+                tokens.index = start;
+                nextId = first;
+                return parseSource();
+            } else if (ast instanceof Ast.Field) {
+                fields.add((Ast.Field) ast);
+            } else {
+                methods.add((Ast.Method) ast);
+            }
+        }
+        //the fields come before the methods, so this is the order of the spans
+        nextId = first;
+        for (int i = 0; i < fields.size(); i++) {
+            nextId = renumber(fields.get(i), nextId, deltas[i]);
+        }
+        for (int i = 0; i < methods.size(); i++) {
+            nextId = renumber(methods.get(i), nextId, deltas[fields.size() + i]);
+        }
+        tokens.index = tokens.size;
+        return span(new Ast.Source(fields, methods), begin);
+    }
+
+    /**
+     * Returns the previous field or method with the same tokens as those from
+     * {@code start} to {@code end}, accounting for the shift in the index of
+     * tokens after the edit, or null if there is none or the edit is between
+     * its tokens.
+     */
+    private Ast reuseSpan(int start, int end, List<Token> previousTokens, int[] previousSpans, List<Ast> previousNodes, int offset, int delta, int inserted) {
+        int index = previousIndex(tokens.get(start - tokens.index).getIndex(), offset, delta, inserted);
+        int low = 0;
+        int high = previousSpans.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (previousTokens.get(previousSpans[middle]).getIndex() < index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (index < 0 || end - start < 2 || low == previousSpans.length - 1
+                || previousTokens.get(previousSpans[low]).getIndex() != index
+                || previousSpans[low + 1] - previousSpans[low] != end - start) {
+            return null;
+        }
+        //the tokens must all be moved the same distance for their spans to be
+        //moved with them, so an edit between them is parsed again
+        int shift = tokens.get(start - tokens.index).getIndex() - previousTokens.get(previousSpans[low]).getIndex();
+        for (int i = 0; i < end - start; i++) {
+            Token token = tokens.get(start + i - tokens.index);
+            Token previousToken = previousTokens.get(previousSpans[low] + i);
+            if (token.getType() != previousToken.getType()
+                    || previousIndex(token.getIndex(), offset, delta, inserted) != previousToken.getIndex()
+                    || token.getIndex() - previousToken.getIndex() != shift
+                    || !token.getLiteral().equals(previousToken.getLiteral())) {
+                return null;
+            }
+        }
+        //the spans of the previous tokens match its fields and methods if it
+        //parsed successfully, but this is checked to be safe
+        Ast ast = previousNodes.get(low);
+        String name = tokens.get(start + 1 - tokens.index).getLiteral();
+        if (ast instanceof Ast.Field) {
+            return tokens.getCode(start - tokens.index) == TokenCode.LET && ((Ast.Field) ast).getName().equals(name) ? ast : null;
+        }
+        return tokens.getCode(start - tokens.index) == TokenCode.DEF && ((Ast.Method) ast).getName().equals(name) ? ast : null;
+    }
+
+    /**
+     * Returns the index in the previous source of the character at the given
+     * index in the edited source, or -1 if it was inserted by the edit.
+     */
+    private static int previousIndex(int index, int offset, int delta, int inserted) {
+        if (index < offset) {
+            return index;
+        } else if (index < offset + inserted) {
+            return -1;
+        }
+        return index - delta;
+    }
 
     /**
      * Parses the {@code field} rule. This method should only be called if the
      * next tokens start a field, aka {@code LET}.
      */
     public Ast.Field parseField() throws ParseException {
+        int start = keywordStart();
         if (!match(Token.Type.IDENTIFIER))
         {
-            if (!tokens.has(0))
-                throw new ParseException("Expected Identifier", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            else
-                throw new ParseException("Expected Identifier", tokens.get(0).getIndex());
+            throw error("Expected Identifier");
         }
         String name = tokens.get(-1).getLiteral();
         String typename = "";
-        if (!match(":", Token.Type.IDENTIFIER))
+        if (!match(TYPE))
         {
-            throw new ParseException("Missing type annotation", tokens.get(0).getIndex());
+            //when recovering, a missing type at the end of the input is reported after the last token
+            throw diagnostics != null ? error("Missing type annotation") : error("Missing type annotation", tokens.get(0).getIndex());
         }
         else
             {
             typename = this.tokens.get(-1).getLiteral();
             }
-        if (match("="))
+        if (match(TokenCode.ASSIGN))
         {
             Ast.Expr expr = parseExpression();
-            if (match(";"))
-                return new Ast.Field(name, typename, Optional.of(expr));
+            if (match(TokenCode.SEMICOLON))
+                return span(new Ast.Field(name, typename, Optional.of(expr)), start);
             else
             {
-                if (!tokens.has(0))
-                    throw new ParseException("Expected ';'", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-                else
-                    throw new ParseException("Expected ';'", tokens.get(0).getIndex());
+                throw error("Expected ';'");
             }
         }
-        else if (match(";"))
-            return new Ast.Field(name, typename, Optional.empty());
+        else if (match(TokenCode.SEMICOLON))
+            return span(new Ast.Field(name, typename, Optional.empty()), start);
         else
         {
-            if (!tokens.has(0))
-                throw new ParseException("Expected ';'", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            else
-                throw new ParseException("Expected ';'", tokens.get(0).getIndex());
+            throw error("Expected ';'");
         }
     }
 
@@ -105,49 +600,38 @@ public final class Parser {
      * next tokens start a method, aka {@code DEF}.
      */
     public Ast.Method parseMethod() throws ParseException {
+        int start = keywordStart();
         if (!match(Token.Type.IDENTIFIER))
         {
-            if (!tokens.has(0))
-                throw new ParseException("Expected Identifier", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            else
-                throw new ParseException("Expected Identifier", tokens.get(0).getIndex());
+            throw error("Expected Identifier");
         }
         String name = tokens.get(-1).getLiteral();
-        if (!match("("))
+        if (!match(TokenCode.LEFT_PAREN))
         {
-            if (!tokens.has(0))
-                throw new ParseException("Expected '('", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            else
-                throw new ParseException("Expected '('", tokens.get(0).getIndex());
+            throw error("Expected '('");
         }
         List<String> params = new ArrayList<>();
         List<String> typenameparams = new ArrayList<>();
         Optional<String> returntypename = Optional.empty();
-        if (!peek(Token.Type.IDENTIFIER) && !peek(")"))
+        if (!peek(Token.Type.IDENTIFIER) && !peek(TokenCode.RIGHT_PAREN))
         {
-            if (!tokens.has(0))
-                throw new ParseException("Expected Identifier or ')'", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            else
-                throw new ParseException("Expected Identifier or ')'", tokens.get(0).getIndex());
+            throw error("Expected Identifier or ')'");
         }
         if (match(Token.Type.IDENTIFIER)) {
             String param = tokens.get(-1).getLiteral();
             params.add(param);
-            if (!match(":", Token.Type.IDENTIFIER))
+            if (!match(TYPE))
             {
-                throw new ParseException("Missing type annotation", tokens.get(0).getIndex());
+                throw diagnostics != null ? error("Missing type annotation") : error("Missing type annotation", tokens.get(0).getIndex());
             }
             else
             {
                 typenameparams.add(tokens.get(-1).getLiteral());
                 match(Token.Type.IDENTIFIER);
             }
-            while (match(",") && !peek(")")) {
+            while (match(TokenCode.COMMA) && !peek(TokenCode.RIGHT_PAREN)) {
                 if (!match(Token.Type.IDENTIFIER)) {
-                    if (!tokens.has(0))
-                        throw new ParseException("Expected Identifier", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-                    else
-                        throw new ParseException("Expected Identifier", tokens.get(0).getIndex());
+                    throw error("Expected Identifier");
                 }
                 param = tokens.get(-1).getLiteral();
                 params.add(param);
@@ -155,34 +639,28 @@ public final class Parser {
                 match(Token.Type.IDENTIFIER);
             }
         }
-        if (!match(")"))
+        if (!match(TokenCode.RIGHT_PAREN))
         {
-            if (!tokens.has(0))
-                throw new ParseException("Expected ')'", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            else
-                throw new ParseException("Expected ')'", tokens.get(0).getIndex());
+            throw error("Expected ')'");
         }
-        if (match(":"))
+        if (match(TokenCode.COLON))
         {
             returntypename = Optional.of(tokens.get(0).getLiteral());
             match(Token.Type.IDENTIFIER);
         }
-        if (!match("DO"))
+        if (!match(TokenCode.DO))
         {
-            if (!tokens.has(0))
-                throw new ParseException("Expected \"DO\"", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            else
-                throw new ParseException("Expected \"DO\"", tokens.get(0).getIndex());
+            throw error("Expected \"DO\"");
         }
         List<Ast.Stmt> stmts = new ArrayList<>();
         while (tokens.has(0))
         {
-            if (match("END"))
-                return new Ast.Method(name, params, typenameparams, returntypename, stmts);
+            if (match(TokenCode.END))
+                return span(new Ast.Method(name, params, typenameparams, returntypename, stmts), start);
             Ast.Stmt stmt = parseStatement();
             stmts.add(stmt);
         }
-        throw new ParseException("Expected \"END\"", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+        throw error("Expected \"END\"", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
     }
 
     /**
@@ -191,20 +669,35 @@ public final class Parser {
      * statement, then it is an expression/assignment statement.
      */
     public Ast.Stmt parseStatement() throws ParseException {
-        if(match("LET"))
-            return parseDeclarationStatement();
-        else if (match("IF"))
-            return parseIfStatement();
-        else if (match("FOR"))
-            return parseForStatement();
-        else if (match("WHILE"))
-            return parseWhileStatement();
-        else if (match("RETURN"))
-            return parseReturnStatement();
-        else if (tokens.has(0))
-            return parseAssignmentStatement();
-        else
-            throw new ParseException("Expected Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+        int start = tokens.index;
+        int offset = nextStart();
+        try {
+            switch (tokens.getCode(0)) {
+                case TokenCode.LET:
+                    tokens.advance();
+                    return parseDeclarationStatement();
+                case TokenCode.IF:
+                    tokens.advance();
+                    return parseIfStatement();
+                case TokenCode.FOR:
+                    tokens.advance();
+                    return parseForStatement();
+                case TokenCode.WHILE:
+                    tokens.advance();
+                    return parseWhileStatement();
+                case TokenCode.RETURN:
+                    tokens.advance();
+                    return parseReturnStatement();
+            }
+            if (tokens.has(0))
+                return parseAssignmentStatement();
+            else
+                throw error("Expected Token", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+        } catch (ParseException e) {
+            if (diagnostics == null)
+                throw e;
+            return recover(e, start, offset);
+        }
     }
 
     /**
@@ -213,72 +706,56 @@ public final class Parser {
      * statement, aka {@code LET}.
      */
     public Ast.Stmt.Declaration parseDeclarationStatement() throws ParseException {
+       int start = keywordStart();
        if (!match(Token.Type.IDENTIFIER))
        {
-           if (!tokens.has(0))
-               throw new ParseException("Expected Identifier", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-           else
-               throw new ParseException("Expected Identifier", tokens.get(0).getIndex());
+           throw error("Expected Identifier");
        }
        String name = tokens.get(-1).getLiteral();
        Optional<String> typename = Optional.empty();
-       if (match(":"))
+       if (match(TokenCode.COLON))
         {
             if (!peek(Token.Type.IDENTIFIER))
             {
-                if (!tokens.has(0))
-                    throw new ParseException("Expected Identifier", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-                else
-                    throw new ParseException("Expected Identifier", tokens.get(0).getIndex());
+                throw error("Expected Identifier");
             }
             typename = Optional.of(tokens.get(0).getLiteral());
             match(Token.Type.IDENTIFIER);
         }
-       if (match("="))
+       if (match(TokenCode.ASSIGN))
        {
            Ast.Expr expr = parseExpression();
-           if (match(";"))
-               return new Ast.Stmt.Declaration(name, typename, Optional.of(expr));
+           if (match(TokenCode.SEMICOLON))
+               return span(new Ast.Stmt.Declaration(name, typename, Optional.of(expr)), start);
            else
            {
-               if (!tokens.has(0))
-                   throw new ParseException("Expected ';'", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-               else
-                   throw new ParseException("Expected ';'", tokens.get(0).getIndex());
+               throw error("Expected ';'");
            }
        }
-       if (match(";"))
-           return new Ast.Stmt.Declaration(name, typename, Optional.empty());
+       if (match(TokenCode.SEMICOLON))
+           return span(new Ast.Stmt.Declaration(name, typename, Optional.empty()), start);
        else {
-           if (!tokens.has(0))
-               throw new ParseException("Expected ';'", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-           else
-               throw new ParseException("Expected ';'", tokens.get(0).getIndex());
+           throw error("Expected ';'");
        }
     }
 
     public Ast.Stmt parseAssignmentStatement() throws ParseException {
+        int start = nextStart();
         Ast.Expr expr1 = parseExpression();
-        if (match("="))
+        if (match(TokenCode.ASSIGN))
         {
             Ast.Expr expr2 = parseExpression();
-            if (match(";"))
-                return new Ast.Stmt.Assignment(expr1, expr2);
+            if (match(TokenCode.SEMICOLON))
+                return span(new Ast.Stmt.Assignment(expr1, expr2), start);
             else
             {
-                if (!tokens.has(0))
-                    throw new ParseException("Expected ';'", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-                else
-                    throw new ParseException("Expected ';'", tokens.get(0).getIndex());
+                throw error("Expected ';'");
             }
         }
-        if (match(";"))
-            return new Ast.Stmt.Expression(expr1);
+        if (match(TokenCode.SEMICOLON))
+            return span(new Ast.Stmt.Expression(expr1), start);
         else {
-            if (!tokens.has(0))
-                throw new ParseException("Expected ';'", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            else
-                throw new ParseException("Expected ';'", tokens.get(0).getIndex());
+            throw error("Expected ';'");
         }
     }
     /**
@@ -287,33 +764,33 @@ public final class Parser {
      * {@code IF}.
      */
     public Ast.Stmt.If parseIfStatement() throws ParseException {
+        if (stackSafe)
+            return (Ast.Stmt.If) run(new IfFrame());
+        int start = keywordStart();
         Ast.Expr expr = parseExpression();
-        if (!match("DO"))
+        if (!match(TokenCode.DO))
         {
-            if (!tokens.has(0))
-                throw new ParseException("Expected \"DO\"", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            else
-                throw new ParseException("Expected \"DO\"", tokens.get(0).getIndex());
+            throw error("Expected \"DO\"");
         }
         List<Ast.Stmt> stmts = new ArrayList<>();
         List<Ast.Stmt> elsestmts = new ArrayList<>();
         while (tokens.has(0)) {
-            if (match("ELSE"))
+            if (match(TokenCode.ELSE))
             {
                 while (tokens.has(0))
                 {
-                    if (match("END"))
-                        return new Ast.Stmt.If(expr, stmts, elsestmts);
+                    if (match(TokenCode.END))
+                        return span(new Ast.Stmt.If(expr, stmts, elsestmts), start);
                     Ast.Stmt elsestmt = parseStatement();
                     elsestmts.add(elsestmt);
                 }
             }
-            if (match("END"))
-                return new Ast.Stmt.If(expr, stmts, elsestmts);
+            if (match(TokenCode.END))
+                return span(new Ast.Stmt.If(expr, stmts, elsestmts), start);
             Ast.Stmt stmt = parseStatement();
             stmts.add(stmt);
         }
-        throw new ParseException("Expected \"END\"", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+        throw error("Expected \"END\"", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
     }
 
     /**
@@ -322,37 +799,31 @@ public final class Parser {
      * {@code FOR}.
      */
     public Ast.Stmt.For parseForStatement() throws ParseException {
+        if (stackSafe)
+            return (Ast.Stmt.For) run(new ForFrame());
+        int start = keywordStart();
         if (!match(Token.Type.IDENTIFIER))
         {
-            if (!tokens.has(0))
-                throw new ParseException("Expected Identifier", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            else
-                throw new ParseException("Expected Identifier", tokens.get(0).getIndex());
+            throw error("Expected Identifier");
         }
         String name = tokens.get(-1).getLiteral();
-        if (!match("IN"))
+        if (!match(TokenCode.IN))
         {
-            if (!tokens.has(0))
-                throw new ParseException("Expected \"IN\"", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            else
-                throw new ParseException("Expected \"IN\"", tokens.get(0).getIndex());
+            throw error("Expected \"IN\"");
         }
         Ast.Expr expr = parseExpression();
-        if (!match("DO"))
+        if (!match(TokenCode.DO))
         {
-            if (!tokens.has(0))
-                throw new ParseException("Expected \"DO\"", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            else
-                throw new ParseException("Expected \"DO\"", tokens.get(0).getIndex());
+            throw error("Expected \"DO\"");
         }
         List<Ast.Stmt> stmts = new ArrayList<>();
         while (tokens.has(0)) {
-            if (match("END"))
-                return new Ast.Stmt.For(name, expr, stmts);
+            if (match(TokenCode.END))
+                return span(new Ast.Stmt.For(name, expr, stmts), start);
             Ast.Stmt stmt = parseStatement();
             stmts.add(stmt);
         }
-        throw new ParseException("Expected \"END\"", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+        throw error("Expected \"END\"", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
     }
 
     /**
@@ -361,22 +832,22 @@ public final class Parser {
      * {@code WHILE}.
      */
     public Ast.Stmt.While parseWhileStatement() throws ParseException {
+        if (stackSafe)
+            return (Ast.Stmt.While) run(new WhileFrame());
+        int start = keywordStart();
         Ast.Expr expr = parseExpression();
-        if (!match("DO"))
+        if (!match(TokenCode.DO))
         {
-            if (!tokens.has(0))
-                throw new ParseException("Expected \"DO\"", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            else
-                throw new ParseException("Expected \"DO\"", tokens.get(0).getIndex());
+            throw error("Expected \"DO\"");
         }
         List<Ast.Stmt> stmts = new ArrayList<>();
         while (tokens.has(0)) {
-            if (match("END"))
-                return new Ast.Stmt.While(expr, stmts);
+            if (match(TokenCode.END))
+                return span(new Ast.Stmt.While(expr, stmts), start);
             Ast.Stmt stmt = parseStatement();
             stmts.add(stmt);
         }
-        throw new ParseException("Expected \"END\"", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+        throw error("Expected \"END\"", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
     }
 
     /**
@@ -385,88 +856,103 @@ public final class Parser {
      * {@code RETURN}.
      */
     public Ast.Stmt.Return parseReturnStatement() throws ParseException {
+        int start = keywordStart();
         Ast.Expr expr = parseExpression();
-        if (match(";"))
-            return new Ast.Stmt.Return(expr);
+        if (match(TokenCode.SEMICOLON))
+            return span(new Ast.Stmt.Return(expr), start);
         else
         {
-            if (!tokens.has(0))
-                throw new ParseException("Expected ';'", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            else
-                throw new ParseException("Expected ';'", tokens.get(0).getIndex());
+            throw error("Expected ';'");
         }
 
     }
 
+    /**
+     * The precedence of each binary operator, indexed by {@link TokenCode}.
+     * Operators with higher precedence bind tighter, and tokens which are not
+     * binary operators have a precedence of 0. All operators are left
+     * associative, so adding an operator only requires an entry here.
+     */
+    private static final int LOGICAL = 1;
+    private static final int EQUALITY = 2;
+    private static final int ADDITIVE = 3;
+    private static final int MULTIPLICATIVE = 4;
+
+    private static final int[] PRECEDENCE = new int[TokenCode.NOT_EQUAL + 1];
+
+    static {
+        PRECEDENCE[TokenCode.AND] = LOGICAL;
+        PRECEDENCE[TokenCode.OR] = LOGICAL;
+        PRECEDENCE[TokenCode.LESS] = EQUALITY;
+        PRECEDENCE[TokenCode.LESS_EQUAL] = EQUALITY;
+        PRECEDENCE[TokenCode.GREATER] = EQUALITY;
+        PRECEDENCE[TokenCode.GREATER_EQUAL] = EQUALITY;
+        PRECEDENCE[TokenCode.EQUAL] = EQUALITY;
+        PRECEDENCE[TokenCode.NOT_EQUAL] = EQUALITY;
+        PRECEDENCE[TokenCode.PLUS] = ADDITIVE;
+        PRECEDENCE[TokenCode.MINUS] = ADDITIVE;
+        PRECEDENCE[TokenCode.ASTERISK] = MULTIPLICATIVE;
+        PRECEDENCE[TokenCode.SLASH] = MULTIPLICATIVE;
+    }
+
     /**
      * Parses the {@code expression} rule.
      */
     public Ast.Expr parseExpression() throws ParseException {
-        return parseLogicalExpression();
+        return parseBinaryExpression(LOGICAL);
     }
 
     /**
      * Parses the {@code logical-expression} rule.
      */
     public Ast.Expr parseLogicalExpression() throws ParseException {
-        Ast.Expr compare = parseEqualityExpression();
-        while (match("OR") || match("AND"))
-        {
-            if (!tokens.has(0))
-                throw new ParseException("Expected Identifier", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            String operator = tokens.get(-1).getLiteral();
-            Ast.Expr right = parseEqualityExpression();
-            compare = new Ast.Expr.Binary(operator, compare, right);
-        }
-        return compare;
+        return parseBinaryExpression(LOGICAL);
     }
 
     /**
      * Parses the {@code equality-expression} rule.
      */
     public Ast.Expr parseEqualityExpression() throws ParseException {
-        Ast.Expr addi = parseAdditiveExpression();
-        while (match(">") || match(">=") || match("<") || match("<=") || match("==") || match("!="))
-        {
-            if (!tokens.has(0))
-                throw new ParseException("Expected Identifier", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            String operator = tokens.get(-1).getLiteral();
-            Ast.Expr right = parseAdditiveExpression();
-            addi = new Ast.Expr.Binary(operator, addi, right);
-        }
-        return addi;
+        return parseBinaryExpression(EQUALITY);
     }
 
     /**
      * Parses the {@code additive-expression} rule.
      */
     public Ast.Expr parseAdditiveExpression() throws ParseException {
-        Ast.Expr multi = parseMultiplicativeExpression();
-        while (match("+") || match("-"))
-        {
-            if (!tokens.has(0))
-                throw new ParseException("Expected Identifier", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            String operator = tokens.get(-1).getLiteral();
-            Ast.Expr right = parseMultiplicativeExpression();
-            multi = new Ast.Expr.Binary(operator, multi, right);
-        }
-        return multi;
+        return parseBinaryExpression(ADDITIVE);
     }
 
     /**
      * Parses the {@code multiplicative-expression} rule.
      */
     public Ast.Expr parseMultiplicativeExpression() throws ParseException {
-        Ast.Expr second = parseSecondaryExpression();
-        while (match("*") || match("/"))
+        return parseBinaryExpression(MULTIPLICATIVE);
+    }
+
+    /**
+     * Parses a sequence of binary operations whose operators have at least
+     * the given precedence (precedence climbing). The right operand of each
+     * operator only includes operators of higher precedence, so operators are
+     * left associative and the result is the same as the grammar's rule for
+     * each level. Only the levels which actually appear are recursed into.
+     */
+    private Ast.Expr parseBinaryExpression(int precedence) throws ParseException {
+        if (stackSafe)
+            return (Ast.Expr) run(new BinaryFrame(precedence));
+        int start = nextStart();
+        Ast.Expr left = parseSecondaryExpression();
+        int next;
+        while ((next = PRECEDENCE[tokens.getCode(0)]) >= precedence)
         {
+            tokens.advance();
             if (!tokens.has(0))
-                throw new ParseException("Expected Identifier", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                throw error("Expected Identifier", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
             String operator = tokens.get(-1).getLiteral();
-            Ast.Expr right = parseSecondaryExpression();
-            second = new Ast.Expr.Binary(operator, second, right);
+            Ast.Expr right = parseBinaryExpression(next + 1);
+            left = span(intern(new Ast.Expr.Binary(operator, left, right)), start);
         }
-        return second;
+        return left;
     }
 
     /**
@@ -475,41 +961,53 @@ public final class Parser {
     //secondary_expression
     //         ::= primary_expression ( '.' identifier ( '(' ( expression ( ',' expression )* )? ')' )? )*
     public Ast.Expr parseSecondaryExpression() throws ParseException {
+        if (stackSafe)
+            return (Ast.Expr) run(new SecondaryFrame());
+        int start = nextStart();
         Ast.Expr primary = parsePrimaryExpression();
-        while (peek(".", Token.Type.IDENTIFIER)) {
-            if (peek(".", Token.Type.IDENTIFIER, "(")) {
-                primary = collectFunctionReceivers(primary);
+        while (peek(ACCESS)) {
+            if (peek(CALL)) {
+                primary = collectFunctionReceivers(primary, start);
             } else {
-                primary = new Ast.Expr.Access(Optional.of(primary), tokens.get(1).getLiteral());
-                match(".", Token.Type.IDENTIFIER);
+                String name = tokens.get(1).getLiteral();
+                match(ACCESS);
+                primary = span(new Ast.Expr.Access(Optional.of(primary), name), start);
             }
         }
-        if (peek("."))
+        if (peek(TokenCode.DOT))
         {
-            if (!tokens.has(0))
-                throw new ParseException("Expected Identifier", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            else
-                throw new ParseException("Expected Identifier", tokens.get(0).getIndex());
+            throw error("Expected Identifier");
         }
         return primary;
     }
 
     public Ast.Expr collectFunctionReceivers(Ast.Expr receiver) throws ParseException
     {
-        while(peek(".", Token.Type.IDENTIFIER, "(")) {
+        return collectFunctionReceivers(receiver, receiver.getStart());
+    }
+
+    /**
+     * As in {@link #collectFunctionReceivers(Ast.Expr)}, where the receiver
+     * starts at the given index in the source.
+     */
+    private Ast.Expr collectFunctionReceivers(Ast.Expr receiver, int start) throws ParseException
+    {
+        if (stackSafe)
+            return (Ast.Expr) run(new ReceiversFrame(receiver, start));
+        while(peek(CALL)) {
             String name = tokens.get(1).getLiteral();
             List<Ast.Expr> args = new ArrayList<>();
-            match(".", Token.Type.IDENTIFIER, "(");
+            match(CALL);
             while (tokens.has(0)) {
-                if (match(")")){
-                    receiver = new Ast.Expr.Function(Optional.of(receiver), name, args);
+                if (match(TokenCode.RIGHT_PAREN)){
+                    receiver = span(new Ast.Expr.Function(Optional.of(receiver), name, args), start);
                     break;
                 }
-                if (match(",")) {
+                if (match(TokenCode.COMMA)) {
                     if (!tokens.has(0))
-                        throw new ParseException("Expecting Expression", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-                    if (match(")")) {
-                        throw new ParseException("Missing Expression", tokens.get(-1).getIndex());
+                        throw error("Expecting Expression", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                    if (match(TokenCode.RIGHT_PAREN)) {
+                        throw error("Missing Expression", tokens.get(-1).getIndex());
                     }
                 }
                 else {
@@ -518,7 +1016,7 @@ public final class Parser {
                 }
             }
             if (!tokens.has(0) && tokens.get(-1).getLiteral() != ")")
-                throw new ParseException("Expecting ')'", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                throw error("Expecting ')'", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
         }
         return receiver;
     }
@@ -529,87 +1027,213 @@ public final class Parser {
      * not strictly necessary.
      */
     public Ast.Expr parsePrimaryExpression() throws ParseException {
-        if (match("FALSE"))
-            return new Ast.Expr.Literal(Boolean.FALSE);
-        else if (match("TRUE"))
-            return new Ast.Expr.Literal(Boolean.TRUE);
-        else if (match("NIL"))
-            return new Ast.Expr.Literal(null);
-        else if (match(Token.Type.INTEGER))
-            return new Ast.Expr.Literal(new BigInteger(tokens.get(-1).getLiteral()));
-        else if (match(Token.Type.DECIMAL))
-            return new Ast.Expr.Literal(new BigDecimal(tokens.get(-1).getLiteral()));
-        else if (match(Token.Type.STRING)) {
-            String token = tokens.get(-1).getLiteral();
-            token = token.replaceAll("\"","");
-            token = token.replaceAll("\\\\b", "\b");
-            token = token.replaceAll("\\\\n", "\n");
-            token = token.replaceAll("\\\\r", "\r");
-            token = token.replaceAll("\\\\t", "\t");
-            token = token.replaceAll("\\\\'", "'");
-            token = token.replaceAll("\\\\\"", "\"");
-            token = token.replaceAll("\\\\", "\\");
-            return new Ast.Expr.Literal(token);
-        }
-        else if (match(Token.Type.CHARACTER)) {
-            String token = tokens.get(-1).getLiteral();
-            token = token.replaceAll("\'", "");
-            token = token.replaceAll("\\\\b", "\b");
-            token = token.replaceAll("\\\\n", "\n");
-            token = token.replaceAll("\\\\r", "\r");
-            token = token.replaceAll("\\\\t", "\t");
-            token = token.replaceAll("\\\\'", "'");
-            token = token.replaceAll("\\\\\"", "\"");
-            token = token.replaceAll("\\\\", "\\");
-            return new Ast.Expr.Literal(token.charAt(0));
-        }
-        else if (match("("))
+        if (stackSafe)
+            return (Ast.Expr) run(new PrimaryFrame());
+        Ast.Expr.Literal literal = parseLiteral();
+        if (literal != null)
+            return span(intern(literal), tokens.getStart(-1));
+        else if (match(TokenCode.LEFT_PAREN))
         {
+            int start = tokens.getStart(-1);
             Ast.Expr expr = parseExpression();
-            if (!match(")")) {
-                if (!tokens.has(0))
-                    throw new ParseException("Expecting ')'", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-                else
-                    throw new ParseException("Expecting ')'", tokens.get(0).getIndex());
+            if (!match(TokenCode.RIGHT_PAREN)) {
+                throw error("Expecting ')'");
             }
             else
-                return new Ast.Expr.Group(expr);
+                return span(intern(new Ast.Expr.Group(expr)), start);
         }
         else if (match(Token.Type.IDENTIFIER))
         {
+            int start = tokens.getStart(-1);
             String name = tokens.get(-1).getLiteral();
-            if (match("("))
+            if (match(TokenCode.LEFT_PAREN))
             {
                 List<Ast.Expr> arguments = new ArrayList<>();
-                if (!peek(")") && !peek(",")) {
+                if (!peek(TokenCode.RIGHT_PAREN) && !peek(TokenCode.COMMA)) {
                     Ast.Expr expr = parseExpression();
                     arguments.add(expr);
 
-                    while (match(",") && !peek(")")) {
+                    while (match(TokenCode.COMMA) && !peek(TokenCode.RIGHT_PAREN)) {
                         expr = parseExpression();
                         arguments.add(expr);
                     }
                 }
-                if (!match(")")) {
-                    if (!tokens.has(0))
-                        throw new ParseException("Expecting ')'", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-                    else
-                        throw new ParseException("Expecting ')'", tokens.get(0).getIndex());
+                if (!match(TokenCode.RIGHT_PAREN)) {
+                    throw error("Expecting ')'");
                 }
                 else
-                    return new Ast.Expr.Function(Optional.empty(), name, arguments);
+                    return span(new Ast.Expr.Function(Optional.empty(), name, arguments), start);
             }
             else
-                return new Ast.Expr.Access(Optional.empty(),name);
+                return span(new Ast.Expr.Access(Optional.empty(),name), start);
         }
         else
         {
-            if (!tokens.has(0))
-                throw new ParseException("Invalid Primary Expression", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            else
-                throw new ParseException("Invalid Primary Expression", tokens.get(0).getIndex());
+            throw error("Invalid Primary Expression");
+        }
+
+    }
+
+    /**
+     * Assigns the next id to the node, with a span from the given start to the
+     * end of the last token parsed, or an empty span there if the start is -1.
+     * Shared nodes from an interner which already have an id are unchanged,
+     * and with an interner the id is taken from it.
+     */
+    private <T extends Ast> T span(T ast, int start) {
+        if (ast.getId() < 0) {
+            int end = tokens.index > 0 ? tokens.getEnd(-1) : 0;
+            ast.setSpan(interner != null ? interner.nextId() : nextId++, start < 0 ? end : start, end);
+        }
+        return ast;
+    }
+
+    /**
+     * Returns the start of the next token, or -1 if there is none.
+     */
+    private int nextStart() {
+        return tokens.has(0) ? tokens.getStart(0) : -1;
+    }
+
+    /**
+     * Returns the start of the keyword starting the rule, which was matched by
+     * the caller, or of the next token if the rule is parsed directly.
+     */
+    private int keywordStart() {
+        return tokens.index > 0 ? tokens.getStart(-1) : nextStart();
+    }
+
+    /**
+     * Returns the shared node for the expression if there is an interner.
+     */
+    private <T extends Ast.Expr> T intern(T expr) {
+        return interner == null ? expr : interner.intern(expr);
+    }
+
+    /**
+     * Parses a literal from the {@code primary-expression} rule, or returns
+     * null if the next token is not a literal.
+     */
+    private Ast.Expr.Literal parseLiteral() {
+        if (match(TokenCode.FALSE))
+            return new Ast.Expr.Literal(Boolean.FALSE);
+        else if (match(TokenCode.TRUE))
+            return new Ast.Expr.Literal(Boolean.TRUE);
+        else if (match(TokenCode.NIL))
+            return new Ast.Expr.Literal(null);
+        else if (match(Token.Type.INTEGER))
+            return parseInteger(tokens.get(-1).getLiteral());
+        else if (match(Token.Type.DECIMAL))
+            return parseDecimal(tokens.get(-1).getLiteral());
+        else if (match(Token.Type.STRING))
+            return new Ast.Expr.Literal(tokens.get(-1).getValue());
+        else if (match(Token.Type.CHARACTER))
+            return new Ast.Expr.Literal(tokens.get(-1).getValue().charAt(0));
+        return null;
+    }
+
+    /**
+     * Returns the literal of an integer token. Integers of up to 18 digits
+     * cannot overflow a long, so they are kept in compact form without
+     * creating a {@link BigInteger}.
+     */
+    private static Ast.Expr.Literal parseInteger(String literal) {
+        int start = Character.isDigit(literal.charAt(0)) ? 0 : 1;
+        if (literal.length() - start <= 18)
+            return Ast.Expr.Literal.ofInteger(Long.parseLong(literal));
+        return new Ast.Expr.Literal(new BigInteger(literal));
+    }
+
+    /**
+     * Returns the literal of a decimal token, which is kept in compact form
+     * (as the digits without the point, and the number of digits after it)
+     * when it has up to 18 digits, in the same way as {@link
+     * #parseInteger(String)}.
+     */
+    private static Ast.Expr.Literal parseDecimal(String literal) {
+        int start = Character.isDigit(literal.charAt(0)) ? 0 : 1;
+        int point = literal.indexOf('.');
+        if (literal.length() - start - 1 <= 18) {
+            long unscaled = 0;
+            for (int i = start; i < literal.length(); i++) {
+                if (i != point)
+                    unscaled = 10 * unscaled + (literal.charAt(i) - '0');
+            }
+            return Ast.Expr.Literal.ofDecimal(literal.charAt(0) == '-' ? -unscaled : unscaled, literal.length() - point - 1);
+        }
+        return new Ast.Expr.Literal(new BigDecimal(literal));
+    }
+
+    /**
+     * Returns an exception with the given message at the next token, or just
+     * after the last token if there are none left.
+     */
+    private ParseException error(String message) {
+        if (!tokens.has(0))
+            return error(message, tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+        else
+            return error(message, tokens.get(0).getIndex());
+    }
+
+    /**
+     * Returns an exception with the given message and index. When recovering
+     * from errors the exception is caught by the parser, so its stack trace
+     * is not filled in.
+     */
+    private ParseException error(String message, int index) {
+        return diagnostics == null ? new ParseException(message, index) : new ParseException(message, index, false);
+    }
+
+    /**
+     * Records the error, unless it is the same as the last one.
+     */
+    private Diagnostic record(ParseException exception) {
+        Diagnostic diagnostic = new Diagnostic(exception.getMessage(), exception.getIndex());
+        if (diagnostics.isEmpty() || !diagnostics.get(diagnostics.size() - 1).equals(diagnostic)) {
+            diagnostics.add(diagnostic);
         }
+        return diagnostic;
+    }
 
+    /**
+     * Records the error in the statement starting at the given index (and
+     * offset in the source) and skips the rest of it, returning the error node
+     * replacing it.
+     */
+    private Ast.Stmt.Error recover(ParseException exception, int start, int offset) {
+        Ast.Stmt.Error error = new Ast.Stmt.Error(record(exception));
+        synchronize(start, false);
+        return span(error, offset);
+    }
+
+    /**
+     * Skips tokens after an error in the statement, or field or method at the
+     * top level, starting at the given index. At least one token is skipped,
+     * and any nested blocks (from DO to END) are skipped as a whole. Outside
+     * of them, a statement ends after a ';', or before the END or ELSE of the
+     * enclosing block or the start of another statement. A field or method
+     * ends before the next LET or DEF.
+     */
+    private void synchronize(int start, boolean top) {
+        if (tokens.index == start && tokens.has(0)) {
+            tokens.advance();
+        }
+        int depth = 0;
+        while (tokens.has(0)) {
+            int code = tokens.getCode(0);
+            if (depth == 0) {
+                if (top ? code == TokenCode.LET || code == TokenCode.DEF : code == TokenCode.END || code == TokenCode.ELSE || code == TokenCode.LET
+                        || code == TokenCode.IF || code == TokenCode.FOR || code == TokenCode.WHILE || code == TokenCode.RETURN)
+                    return;
+            }
+            if (code == TokenCode.DO)
+                depth++;
+            else if (code == TokenCode.END && depth > 0)
+                depth--;
+            tokens.advance();
+            if (!top && depth == 0 && code == TokenCode.SEMICOLON)
+                return;
+        }
     }
 
     /**
@@ -628,11 +1252,11 @@ public final class Parser {
             if (!tokens.has(i))
                 return false;
             else if (patterns[i] instanceof Token.Type) {
-                if (patterns[i] != tokens.get(i).getType())
+                if (patterns[i] != tokens.getType(i))
                     return false;
             }
             else if (patterns[i] instanceof String) {
-                if (!patterns[i].equals(tokens.get(i).getLiteral())) {
+                if (!tokens.literalEquals(i, (String) patterns[i])) {
                     return false;
                 }
             }
@@ -643,6 +1267,81 @@ public final class Parser {
         return true;
     }
 
+    /**
+     * Returns {@code true} if the next token is the keyword or operator with the
+     * given {@link TokenCode}, which is a single int comparison.
+     */
+    public boolean peek(int code) {
+        return tokens.getCode(0) == code;
+    }
+
+    /**
+     * As in {@link #peek(int)}, but also advances the token stream.
+     */
+    public boolean match(int code) {
+        boolean peek = peek(code);
+        if (peek) {
+            tokens.advance();
+        }
+        return peek;
+    }
+
+    /**
+     * Returns {@code true} if the next token has the given type, in the same
+     * way as {@link #peek(Object...)} with a single type but without
+     * allocating an array.
+     */
+    public boolean peek(Token.Type type) {
+        return tokens.has(0) && tokens.getType(0) == type;
+    }
+
+    /**
+     * As in {@link #peek(Token.Type)}, but also advances the token stream.
+     */
+    public boolean match(Token.Type type) {
+        boolean peek = peek(type);
+        if (peek) {
+            tokens.advance();
+        }
+        return peek;
+    }
+
+    /**
+     * Returns {@code true} if the current sequence of tokens matches the
+     * compiled pattern, in the same way as {@link #peek(Object...)}.
+     */
+    public boolean peek(TokenPattern pattern) {
+        for (int i = 0; i < pattern.types.length; i++) {
+            if (pattern.codes[i] != TokenCode.NONE) {
+                if (tokens.getCode(i) != pattern.codes[i])
+                    return false;
+            }
+            else if (!tokens.has(i))
+                return false;
+            else if (pattern.types[i] != null) {
+                if (tokens.getType(i) != pattern.types[i])
+                    return false;
+            }
+            else if (!tokens.literalEquals(i, pattern.literals[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * As in {@link #peek(TokenPattern)}, but also advances the token stream.
+     */
+    public boolean match(TokenPattern pattern) {
+        boolean peek = peek(pattern);
+        if (peek) {
+            for (int i = 0; i < pattern.types.length; i++) {
+                tokens.advance();
+            }
+        }
+        return peek;
+    }
+
     /**
      * As in the lexer, returns {@code true} if {@link #peek(Object...)} is true
      * and advances the token stream.
@@ -658,27 +1357,517 @@ public final class Parser {
         return peek;
     }
 
+    /**
+     * Runs the frame, and any frames it calls, with an explicit stack instead
+     * of recursive calls (see {@link #setStackSafe(boolean)}). Returns the
+     * result of the first frame.
+     */
+    private Object run(Frame frame) throws ParseException {
+        ArrayDeque<Frame> stack = new ArrayDeque<>();
+        stack.push(frame);
+        Object value = null;
+        while (true) {
+            Object result;
+            try {
+                result = stack.peek().step(value);
+            } catch (ParseException e) {
+                //as if caught by parseStatement for a nested block
+                if (diagnostics == null || stack.size() == 1 || !(stack.peek() instanceof BlockFrame))
+                    throw e;
+                BlockFrame block = (BlockFrame) stack.peek();
+                result = recover(e, block.start, block.offset);
+            }
+            if (result instanceof Frame) {
+                stack.push((Frame) result);
+                value = null;
+            } else {
+                stack.pop();
+                if (stack.isEmpty())
+                    return result;
+                value = result;
+            }
+        }
+    }
+
+    /**
+     * A rule being parsed by {@link #run(Frame)}, which corresponds to a call
+     * of the recursive method for the same rule. Where that method would call
+     * another rule, {@link #step(Object)} instead returns a frame for it and is
+     * called again with the result of that frame. Otherwise it returns the
+     * result of the rule, and is first called with {@code null}.
+     */
+    private abstract class Frame {
+
+        int state = 0;
+
+        abstract Object step(Object value) throws ParseException;
+
+    }
+
+    /**
+     * As in {@link #parseBinaryExpression(int)}.
+     */
+    private final class BinaryFrame extends Frame {
+
+        private final int precedence;
+        private int start;
+        private Ast.Expr left;
+        private String operator;
+
+        BinaryFrame(int precedence) {
+            this.precedence = precedence;
+        }
+
+        @Override
+        Object step(Object value) throws ParseException {
+            if (state == 0) {
+                state = 1;
+                start = nextStart();
+                return new SecondaryFrame();
+            } else if (state == 1) {
+                state = 2;
+                left = (Ast.Expr) value;
+            } else {
+                left = span(intern(new Ast.Expr.Binary(operator, left, (Ast.Expr) value)), start);
+            }
+            int next = PRECEDENCE[tokens.getCode(0)];
+            if (next >= precedence) {
+                tokens.advance();
+                if (!tokens.has(0))
+                    throw error("Expected Identifier", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                operator = tokens.get(-1).getLiteral();
+                return new BinaryFrame(next + 1);
+            }
+            return left;
+        }
+
+    }
+
+    /**
+     * As in {@link #parseSecondaryExpression()}.
+     */
+    private final class SecondaryFrame extends Frame {
+
+        private int start;
+
+        @Override
+        Object step(Object value) throws ParseException {
+            if (state == 0) {
+                state = 1;
+                start = nextStart();
+                return new PrimaryFrame();
+            }
+            Ast.Expr primary = (Ast.Expr) value;
+            while (peek(ACCESS)) {
+                if (peek(CALL)) {
+                    return new ReceiversFrame(primary, start);
+                } else {
+                    String name = tokens.get(1).getLiteral();
+                    match(ACCESS);
+                    primary = span(new Ast.Expr.Access(Optional.of(primary), name), start);
+                }
+            }
+            if (peek(TokenCode.DOT))
+                throw error("Expected Identifier");
+            return primary;
+        }
+
+    }
+
+    /**
+     * As in {@link #collectFunctionReceivers(Ast.Expr)}, where state 1 is
+     * inside the arguments of a call.
+     */
+    private final class ReceiversFrame extends Frame {
+
+        private Ast.Expr receiver;
+        private final int start;
+        private String name;
+        private List<Ast.Expr> args;
+
+        ReceiversFrame(Ast.Expr receiver, int start) {
+            this.receiver = receiver;
+            this.start = start;
+        }
+
+        @Override
+        Object step(Object value) throws ParseException {
+            if (value != null)
+                args.add((Ast.Expr) value);
+            while (true) {
+                if (state == 0) {
+                    if (!peek(CALL))
+                        return receiver;
+                    name = tokens.get(1).getLiteral();
+                    args = new ArrayList<>();
+                    match(CALL);
+                    state = 1;
+                }
+                while (tokens.has(0)) {
+                    if (match(TokenCode.RIGHT_PAREN)) {
+                        receiver = span(new Ast.Expr.Function(Optional.of(receiver), name, args), start);
+                        break;
+                    }
+                    if (match(TokenCode.COMMA)) {
+                        if (!tokens.has(0))
+                            throw error("Expecting Expression", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                        if (match(TokenCode.RIGHT_PAREN))
+                            throw error("Missing Expression", tokens.get(-1).getIndex());
+                    }
+                    else
+                        return new BinaryFrame(LOGICAL);
+                }
+                if (!tokens.has(0) && tokens.get(-1).getLiteral() != ")")
+                    throw error("Expecting ')'", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                state = 0;
+            }
+        }
+
+    }
+
+    /**
+     * As in {@link #parsePrimaryExpression()}, where state 1 is inside a group
+     * and state 2 is inside the arguments of a function.
+     */
+    private final class PrimaryFrame extends Frame {
+
+        private int start;
+        private String name;
+        private List<Ast.Expr> arguments;
+
+        @Override
+        Object step(Object value) throws ParseException {
+            if (state == 1) {
+                if (!match(TokenCode.RIGHT_PAREN))
+                    throw error("Expecting ')'");
+                return span(intern(new Ast.Expr.Group((Ast.Expr) value)), start);
+            } else if (state == 2) {
+                arguments.add((Ast.Expr) value);
+                if (match(TokenCode.COMMA) && !peek(TokenCode.RIGHT_PAREN))
+                    return new BinaryFrame(LOGICAL);
+            } else {
+                Ast.Expr.Literal literal = parseLiteral();
+                if (literal != null)
+                    return span(intern(literal), tokens.getStart(-1));
+                else if (match(TokenCode.LEFT_PAREN)) {
+                    state = 1;
+                    start = tokens.getStart(-1);
+                    return new BinaryFrame(LOGICAL);
+                } else if (!match(Token.Type.IDENTIFIER))
+                    throw error("Invalid Primary Expression");
+                start = tokens.getStart(-1);
+                name = tokens.get(-1).getLiteral();
+                if (!match(TokenCode.LEFT_PAREN))
+                    return span(new Ast.Expr.Access(Optional.empty(), name), start);
+                arguments = new ArrayList<>();
+                if (!peek(TokenCode.RIGHT_PAREN) && !peek(TokenCode.COMMA)) {
+                    state = 2;
+                    return new BinaryFrame(LOGICAL);
+                }
+            }
+            if (!match(TokenCode.RIGHT_PAREN))
+                throw error("Expecting ')'");
+            return span(new Ast.Expr.Function(Optional.empty(), name, arguments), start);
+        }
+
+    }
+
+    /**
+     * The base of the frames for statements with a block, which parse each
+     * statement in the block directly unless it has a block itself.
+     */
+    private abstract class BlockFrame extends Frame {
+
+        /**
+         * The index of the first token of the statement.
+         */
+        int start;
+
+        /**
+         * The index in the source of the first token of the statement, which
+         * has just been matched when the frame is created.
+         */
+        final int offset;
+
+        BlockFrame() {
+            offset = keywordStart();
+        }
+
+        /**
+         * Parses the next statement, or returns a frame for it if it is an
+         * if, for, or while statement.
+         */
+        Object statement() throws ParseException {
+            int start = tokens.index;
+            int offset = nextStart();
+            BlockFrame frame;
+            try {
+                switch (tokens.getCode(0)) {
+                    case TokenCode.IF:
+                        tokens.advance();
+                        frame = new IfFrame();
+                        break;
+                    case TokenCode.FOR:
+                        tokens.advance();
+                        frame = new ForFrame();
+                        break;
+                    case TokenCode.WHILE:
+                        tokens.advance();
+                        frame = new WhileFrame();
+                        break;
+                    default:
+                        return parseStatement();
+                }
+            } catch (ParseException e) {
+                if (diagnostics == null)
+                    throw e;
+                return recover(e, start, offset);
+            }
+            frame.start = start;
+            return frame;
+        }
+
+        /**
+         * Parses the {@code DO} and condition or other expression before the
+         * block.
+         */
+        Ast.Expr header() throws ParseException {
+            Ast.Expr expr = parseExpression();
+            if (!match(TokenCode.DO))
+                throw error("Expected \"DO\"");
+            return expr;
+        }
+
+    }
+
+    /**
+     * As in {@link #parseIfStatement()}, where state 1 is inside the else
+     * block.
+     */
+    private final class IfFrame extends BlockFrame {
+
+        private final Ast.Expr expr;
+        private final List<Ast.Stmt> stmts = new ArrayList<>();
+        private final List<Ast.Stmt> elsestmts = new ArrayList<>();
+        private List<Ast.Stmt> block;
+
+        IfFrame() throws ParseException {
+            expr = header();
+        }
+
+        @Override
+        Object step(Object value) throws ParseException {
+            if (value != null)
+                block.add((Ast.Stmt) value);
+            while (true) {
+                if (state == 0) {
+                    if (!tokens.has(0))
+                        throw error("Expected \"END\"", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                    if (match(TokenCode.ELSE)) {
+                        state = 1;
+                        continue;
+                    }
+                    block = stmts;
+                } else if (tokens.has(0)) {
+                    block = elsestmts;
+                } else {
+                    //the else block ran out of tokens, so a statement is parsed for the if block (which fails)
+                    state = 0;
+                    block = stmts;
+                }
+                if (match(TokenCode.END))
+                    return span(new Ast.Stmt.If(expr, stmts, elsestmts), offset);
+                Object stmt = statement();
+                if (stmt instanceof Frame)
+                    return stmt;
+                block.add((Ast.Stmt) stmt);
+            }
+        }
+
+    }
+
+    /**
+     * As in {@link #parseForStatement()}.
+     */
+    private final class ForFrame extends BlockFrame {
+
+        private final String name;
+        private final Ast.Expr expr;
+        private final List<Ast.Stmt> stmts = new ArrayList<>();
+
+        ForFrame() throws ParseException {
+            if (!match(Token.Type.IDENTIFIER))
+                throw error("Expected Identifier");
+            name = tokens.get(-1).getLiteral();
+            if (!match(TokenCode.IN))
+                throw error("Expected \"IN\"");
+            expr = header();
+        }
+
+        @Override
+        Object step(Object value) throws ParseException {
+            if (value != null)
+                stmts.add((Ast.Stmt) value);
+            while (tokens.has(0)) {
+                if (match(TokenCode.END))
+                    return span(new Ast.Stmt.For(name, expr, stmts), offset);
+                Object stmt = statement();
+                if (stmt instanceof Frame)
+                    return stmt;
+                stmts.add((Ast.Stmt) stmt);
+            }
+            throw error("Expected \"END\"", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+        }
+
+    }
+
+    /**
+     * As in {@link #parseWhileStatement()}.
+     */
+    private final class WhileFrame extends BlockFrame {
+
+        private final Ast.Expr expr;
+        private final List<Ast.Stmt> stmts = new ArrayList<>();
+
+        WhileFrame() throws ParseException {
+            expr = header();
+        }
+
+        @Override
+        Object step(Object value) throws ParseException {
+            if (value != null)
+                stmts.add((Ast.Stmt) value);
+            while (tokens.has(0)) {
+                if (match(TokenCode.END))
+                    return span(new Ast.Stmt.While(expr, stmts), offset);
+                Object stmt = statement();
+                if (stmt instanceof Frame)
+                    return stmt;
+                stmts.add((Ast.Stmt) stmt);
+            }
+            throw error("Expected \"END\"", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+        }
+
+    }
+
+    /**
+     * The tokens being parsed, which are either a list of {@link Token}s or a
+     * {@link TokenBuffer}. Types and literals are read from the buffer directly
+     * so peeking does not create {@link Token} objects.
+     */
     private static final class TokenStream {
 
         private final List<Token> tokens;
+        private final TokenBuffer buffer;
+        private final TokenPipe pipe;
+        private Token[] window;
+        private int base = 0;
+        private int size;
         private int index = 0;
 
         private TokenStream(List<Token> tokens) {
             this.tokens = tokens;
+            this.buffer = null;
+            this.pipe = null;
+            this.size = tokens.size();
+        }
+
+        private TokenStream(TokenBuffer buffer) {
+            this.tokens = null;
+            this.buffer = buffer;
+            this.pipe = null;
+            this.size = buffer.size();
+        }
+
+        /**
+         * Creates a stream of the tokens of another (list or buffer) stream
+         * from {@code start} to {@code end}.
+         */
+        private TokenStream(TokenStream stream, int start, int end) {
+            this.tokens = stream.tokens;
+            this.buffer = stream.buffer;
+            this.pipe = null;
+            this.index = start;
+            this.size = end;
+        }
+
+        /**
+         * Creates a stream taking tokens from the pipe into a window starting
+         * at {@code base}, in the same way as the lexer's char stream. Only
+         * the previous token is kept before the current one.
+         */
+        private TokenStream(TokenPipe pipe) {
+            this.tokens = null;
+            this.buffer = null;
+            this.pipe = pipe;
+            this.window = new Token[256];
+            this.size = 0;
         }
 
         /**
          * Returns true if there is a token at index + offset.
          */
         public boolean has(int offset) {
-            return index + offset < tokens.size();
+            return index + offset < size || fill(index + offset);
         }
 
         /**
          * Gets the token at index + offset.
          */
         public Token get(int offset) {
-            return tokens.get(index + offset);
+            if (pipe != null) {
+                if (index + offset < base || !has(offset)) {
+                    throw new IndexOutOfBoundsException("Index: " + (index + offset) + ", Size: " + size);
+                }
+                return window[index + offset - base];
+            }
+            return buffer != null ? buffer.get(index + offset) : tokens.get(index + offset);
+        }
+
+        /**
+         * Gets the index in the source of the first character of the token at
+         * index + offset.
+         */
+        public int getStart(int offset) {
+            return buffer != null ? buffer.getIndex(index + offset) : get(offset).getIndex();
+        }
+
+        /**
+         * Gets the index in the source after the last character of the token
+         * at index + offset.
+         */
+        public int getEnd(int offset) {
+            if (buffer != null) {
+                return buffer.getIndex(index + offset) + buffer.getLength(index + offset);
+            }
+            Token token = get(offset);
+            return token.getIndex() + token.getLiteral().length();
+        }
+
+        /**
+         * Gets the type of the token at index + offset.
+         */
+        public Token.Type getType(int offset) {
+            return buffer != null ? buffer.getType(index + offset) : get(offset).getType();
+        }
+
+        /**
+         * Gets the {@link TokenCode} of the token at index + offset, or {@link
+         * TokenCode#NONE} if there is no such token.
+         */
+        public int getCode(int offset) {
+            if (!has(offset)) {
+                return TokenCode.NONE;
+            }
+            return buffer != null ? buffer.getCode(index + offset) : get(offset).getCode();
+        }
+
+        /**
+         * Returns true if the literal of the token at index + offset is equal to
+         * the given string.
+         */
+        public boolean literalEquals(int offset, String literal) {
+            return buffer != null ? buffer.literalEquals(index + offset, literal) : literal.equals(get(offset).getLiteral());
         }
 
         /**
@@ -688,6 +1877,33 @@ public final class Parser {
             index++;
         }
 
+        /**
+         * Takes tokens from the pipe until the window contains the given
+         * position, returning false if the tokens end first.
+         */
+        private boolean fill(int position) {
+            if (pipe == null) {
+                return false;
+            }
+            int discard = index - 1 - base;
+            if (discard > 0) {
+                System.arraycopy(window, discard, window, 0, size - base - discard);
+                Arrays.fill(window, size - base - discard, size - base, null);
+                base += discard;
+            }
+            while (position >= size) {
+                if (size - base == window.length) {
+                    window = Arrays.copyOf(window, window.length * 2);
+                }
+                int taken = pipe.take(window, size - base, window.length - (size - base));
+                if (taken < 0) {
+                    return false;
+                }
+                size += taken;
+            }
+            return true;
+        }
+
     }
 
 }
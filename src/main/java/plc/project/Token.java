@@ -8,17 +8,37 @@ public final class Token {
         DECIMAL,
         CHARACTER,
         STRING,
-        OPERATOR
+        OPERATOR,
+        ERROR
     }
 
     private final Type type;
-    private final String literal;
+    private final CharSequence source;
     private final int index;
+    private final int length;
+    private final int code;
+    private String literal;
+    private String value;
 
     public Token(Type type, String literal, int index) {
         this.type = type;
+        this.source = null;
+        this.index = index;
+        this.length = literal.length();
+        this.code = TokenCode.of(type, literal, 0, length);
         this.literal = literal;
+    }
+
+    /**
+     * Creates a token whose literal is the range of the source starting at
+     * index, which is only copied into a string by {@link #getLiteral()}.
+     */
+    Token(Type type, CharSequence source, int index, int length) {
+        this.type = type;
+        this.source = source;
         this.index = index;
+        this.length = length;
+        this.code = TokenCode.of(type, source, index, length);
     }
 
     public Type getType() {
@@ -26,24 +46,102 @@ public final class Token {
     }
 
     public String getLiteral() {
+        if (literal == null) {
+            literal = source.subSequence(index, index + length).toString();
+        }
         return literal;
     }
 
+    /**
+     * Returns the value of a {@link Type#STRING} or {@link Type#CHARACTER}
+     * token, which is the literal without its quotes and with escapes decoded,
+     * or otherwise the literal. The value is decoded in one pass the first
+     * time it is requested.
+     */
+    public String getValue() {
+        if (value == null) {
+            String literal = getLiteral();
+            if ((type == Type.STRING || type == Type.CHARACTER) && literal.length() >= 2) {
+                value = decode(literal, 1, literal.length() - 1);
+            } else {
+                value = literal;
+            }
+        }
+        return value;
+    }
+
     public int getIndex() {
         return index;
     }
 
+    /**
+     * Returns the {@link TokenCode} of the keyword or operator this token is,
+     * or {@link TokenCode#NONE}.
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Decodes the escapes in the given range of the literal. Escapes which are
+     * not valid (and so not produced by the lexer) are left as they are.
+     */
+    private static String decode(String literal, int start, int end) {
+        int escape = literal.indexOf('\\', start);
+        if (escape < 0 || escape >= end) {
+            return literal.substring(start, end);
+        }
+        char[] chars = new char[end - start];
+        literal.getChars(start, escape, chars, 0);
+        int length = escape - start;
+        for (int i = escape; i < end; i++) {
+            char c = literal.charAt(i);
+            if (c == '\\' && i + 1 < end) {
+                char decoded = unescape(literal.charAt(i + 1));
+                if (decoded != 0) {
+                    c = decoded;
+                    i++;
+                }
+            }
+            chars[length++] = c;
+        }
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * Returns the character represented by the escape {@code '\\' + c}, or
+     * {@code 0} if it is not a valid escape.
+     */
+    private static char unescape(char c) {
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case '\'':
+            case '"':
+            case '\\':
+                return c;
+            default:
+                return 0;
+        }
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Token
                 && type == ((Token) obj).type
-                && literal.equals(((Token) obj).literal)
+                && getLiteral().equals(((Token) obj).getLiteral())
                 && index == ((Token) obj).index;
     }
 
     @Override
     public String toString() {
-        return type + "=" + literal + "@" + index;
+        return type + "=" + getLiteral() + "@" + index;
     }
 
 }
@@ -0,0 +1,127 @@
+package plc.project;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A compact token stream, storing the type, index, length, and {@link
+ * TokenCode} of each token in parallel arrays instead of as separate {@link
+ * Token} objects. Literals are read from the source when needed, so the
+ * buffer itself holds no strings.
+ *
+ * The {@link Parser} can consume a buffer directly, and {@link #asList()}
+ * provides a view of {@link Token}s for code which expects a token list.
+ */
+public final class TokenBuffer {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private final CharSequence source;
+    private byte[] types = new byte[16];
+    private int[] indices = new int[16];
+    private int[] lengths = new int[16];
+    private byte[] codes = new byte[16];
+    private int size = 0;
+
+    public TokenBuffer(CharSequence source) {
+        this.source = source;
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    /**
+     * Adds a token of the given type covering {@code length} characters of the
+     * source starting at {@code index}.
+     */
+    public void add(Token.Type type, int index, int length) {
+        if (size == types.length) {
+            types = Arrays.copyOf(types, size * 2);
+            indices = Arrays.copyOf(indices, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+            codes = Arrays.copyOf(codes, size * 2);
+        }
+        types[size] = (byte) type.ordinal();
+        indices[size] = index;
+        lengths[size] = length;
+        codes[size] = (byte) TokenCode.of(type, source, index, length);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Token.Type getType(int token) {
+        return TYPES[types[token]];
+    }
+
+    public int getIndex(int token) {
+        return indices[token];
+    }
+
+    public int getLength(int token) {
+        return lengths[token];
+    }
+
+    public int getCode(int token) {
+        return codes[token];
+    }
+
+    public String getLiteral(int token) {
+        return source.subSequence(indices[token], indices[token] + lengths[token]).toString();
+    }
+
+    /**
+     * Returns true if the token's literal is equal to the given string, without
+     * creating the literal.
+     */
+    public boolean literalEquals(int token, String literal) {
+        if (lengths[token] != literal.length()) {
+            return false;
+        }
+        int index = indices[token];
+        for (int i = 0; i < literal.length(); i++) {
+            if (source.charAt(index + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the token as a {@link Token} object. The token's literal is not
+     * created until {@link Token#getLiteral()} is called.
+     */
+    public Token get(int token) {
+        if (token < 0 || token >= size) {
+            throw new IndexOutOfBoundsException("Index: " + token + ", Size: " + size);
+        }
+        return new Token(getType(token), source, indices[token], lengths[token]);
+    }
+
+    /**
+     * Returns a read-only view of the buffer as a list of {@link Token}s.
+     */
+    public List<Token> asList() {
+        return new TokenList();
+    }
+
+    private final class TokenList extends AbstractList<Token> implements RandomAccess {
+
+        @Override
+        public Token get(int index) {
+            return TokenBuffer.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+    }
+
+}
@@ -0,0 +1,175 @@
+package plc.project;
+
+/**
+ * Small integer codes for the keywords and operators of the language, which
+ * are assigned to tokens as they are lexed. This lets the parser test for a
+ * keyword or operator with an int comparison (or a switch) instead of comparing
+ * literals. Tokens which are not keywords or operators have the code
+ * {@link #NONE}.
+ */
+public final class TokenCode {
+
+    public static final int NONE = 0;
+
+    public static final int LET = 1;
+    public static final int DEF = 2;
+    public static final int DO = 3;
+    public static final int END = 4;
+    public static final int IF = 5;
+    public static final int ELSE = 6;
+    public static final int FOR = 7;
+    public static final int IN = 8;
+    public static final int WHILE = 9;
+    public static final int RETURN = 10;
+    public static final int NIL = 11;
+    public static final int TRUE = 12;
+    public static final int FALSE = 13;
+    public static final int AND = 14;
+    public static final int OR = 15;
+
+    public static final int LEFT_PAREN = 16;
+    public static final int RIGHT_PAREN = 17;
+    public static final int COMMA = 18;
+    public static final int SEMICOLON = 19;
+    public static final int COLON = 20;
+    public static final int DOT = 21;
+    public static final int ASSIGN = 22;
+    public static final int PLUS = 23;
+    public static final int MINUS = 24;
+    public static final int ASTERISK = 25;
+    public static final int SLASH = 26;
+    public static final int LESS = 27;
+    public static final int LESS_EQUAL = 28;
+    public static final int GREATER = 29;
+    public static final int GREATER_EQUAL = 30;
+    public static final int EQUAL = 31;
+    public static final int NOT_EQUAL = 32;
+
+    private static final String[] TEXT = {
+            null, "LET", "DEF", "DO", "END", "IF", "ELSE", "FOR", "IN", "WHILE",
+            "RETURN", "NIL", "TRUE", "FALSE", "AND", "OR", "(", ")", ",", ";",
+            ":", ".", "=", "+", "-", "*", "/", "<", "<=", ">", ">=", "==", "!="
+    };
+
+    private TokenCode() {}
+
+    /**
+     * Returns the literal of the keyword or operator with the given code.
+     */
+    public static String getText(int code) {
+        return TEXT[code];
+    }
+
+    /**
+     * Returns the code of a token with the given type and the literal in the
+     * given range of the source.
+     */
+    public static int of(Token.Type type, CharSequence source, int start, int length) {
+        if (length == 0) {
+            return NONE;
+        } else if (type == Token.Type.IDENTIFIER) {
+            return keyword(source, start, length);
+        } else if (type == Token.Type.OPERATOR) {
+            return operator(source, start, length);
+        } else {
+            return NONE;
+        }
+    }
+
+    private static int keyword(CharSequence source, int start, int length) {
+        switch (source.charAt(start)) {
+            case 'A':
+                return is(AND, source, start, length);
+            case 'D':
+                return length == 2 ? is(DO, source, start, length) : is(DEF, source, start, length);
+            case 'E':
+                return length == 3 ? is(END, source, start, length) : is(ELSE, source, start, length);
+            case 'F':
+                return length == 3 ? is(FOR, source, start, length) : is(FALSE, source, start, length);
+            case 'I':
+                return length == 2 && source.charAt(start + 1) == 'F' ? IF : is(IN, source, start, length);
+            case 'L':
+                return is(LET, source, start, length);
+            case 'N':
+                return is(NIL, source, start, length);
+            case 'O':
+                return is(OR, source, start, length);
+            case 'R':
+                return is(RETURN, source, start, length);
+            case 'T':
+                return is(TRUE, source, start, length);
+            case 'W':
+                return is(WHILE, source, start, length);
+            default:
+                return NONE;
+        }
+    }
+
+    private static int operator(CharSequence source, int start, int length) {
+        char c = source.charAt(start);
+        if (length == 2 && source.charAt(start + 1) == '=') {
+            switch (c) {
+                case '<':
+                    return LESS_EQUAL;
+                case '>':
+                    return GREATER_EQUAL;
+                case '=':
+                    return EQUAL;
+                case '!':
+                    return NOT_EQUAL;
+                default:
+                    return NONE;
+            }
+        } else if (length != 1) {
+            return NONE;
+        }
+        switch (c) {
+            case '(':
+                return LEFT_PAREN;
+            case ')':
+                return RIGHT_PAREN;
+            case ',':
+                return COMMA;
+            case ';':
+                return SEMICOLON;
+            case ':':
+                return COLON;
+            case '.':
+                return DOT;
+            case '=':
+                return ASSIGN;
+            case '+':
+                return PLUS;
+            case '-':
+                return MINUS;
+            case '*':
+                return ASTERISK;
+            case '/':
+                return SLASH;
+            case '<':
+                return LESS;
+            case '>':
+                return GREATER;
+            default:
+                return NONE;
+        }
+    }
+
+    /**
+     * Returns the given code if the range of the source is that keyword, or
+     * else {@link #NONE}.
+     */
+    private static int is(int code, CharSequence source, int start, int length) {
+        String text = TEXT[code];
+        if (length != text.length()) {
+            return NONE;
+        }
+        for (int i = 1; i < length; i++) {
+            if (source.charAt(start + i) != text.charAt(i)) {
+                return NONE;
+            }
+        }
+        return code;
+    }
+
+}
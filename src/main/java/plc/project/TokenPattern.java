@@ -0,0 +1,64 @@
+package plc.project;
+
+/**
+ * A sequence of patterns for {@link Parser#peek(TokenPattern)} and {@link
+ * Parser#match(TokenPattern)}, compiled once from the same patterns accepted
+ * by {@link Parser#peek(Object...)}. Patterns which are used repeatedly are
+ * kept in static final fields, so matching them allocates nothing and needs no
+ * {@code instanceof} checks.
+ *
+ * Each {@link Token.Type} is kept as is, and each literal which is a keyword
+ * or operator is compiled to its {@link TokenCode}, so matching each token is
+ * a single comparison. Any other literal is compared with the token's literal.
+ */
+public final class TokenPattern {
+
+    final Token.Type[] types;
+    final int[] codes;
+    final String[] literals;
+
+    private TokenPattern(int length) {
+        this.types = new Token.Type[length];
+        this.codes = new int[length];
+        this.literals = new String[length];
+    }
+
+    /**
+     * Compiles the patterns, each of which is either a {@link Token.Type} or
+     * a {@link String} literal.
+     */
+    public static TokenPattern of(Object... patterns) {
+        TokenPattern pattern = new TokenPattern(patterns.length);
+        for (int i = 0; i < patterns.length; i++) {
+            if (patterns[i] instanceof Token.Type) {
+                pattern.types[i] = (Token.Type) patterns[i];
+            } else if (patterns[i] instanceof String) {
+                String literal = (String) patterns[i];
+                pattern.codes[i] = code(literal);
+                if (pattern.codes[i] == TokenCode.NONE) {
+                    pattern.literals[i] = literal;
+                }
+            } else {
+                throw new AssertionError("Invalid pattern object: " + patterns[i].getClass());
+            }
+        }
+        return pattern;
+    }
+
+    /**
+     * Returns the number of tokens matched by the pattern.
+     */
+    public int length() {
+        return types.length;
+    }
+
+    /**
+     * Returns the code of the keyword or operator with the given literal, or
+     * {@link TokenCode#NONE} if it is neither.
+     */
+    private static int code(String literal) {
+        int code = TokenCode.of(Token.Type.IDENTIFIER, literal, 0, literal.length());
+        return code != TokenCode.NONE ? code : TokenCode.of(Token.Type.OPERATOR, literal, 0, literal.length());
+    }
+
+}
@@ -0,0 +1,179 @@
+package plc.project;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded queue of tokens passed from a {@link Lexer} on one thread to a
+ * {@link Parser} on another, so the two can run at the same time (see {@link
+ * Parser#parsePipelined(Lexer)}).
+ *
+ * Tokens are stored in a ring buffer. To avoid synchronizing on every token,
+ * the producer collects tokens into a small batch which is added to the ring
+ * all at once, and the consumer removes as many tokens as are available. The
+ * producer finishes with {@link #close()}, or {@link #fail(RuntimeException)}
+ * which rethrows the exception to the consumer after the tokens before it.
+ * Either side may {@link #cancel()} the pipe, after which the producer stops.
+ */
+public final class TokenPipe {
+
+    private static final int BATCH_SIZE = 64;
+
+    private final Token[] ring;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private int head = 0;
+    private int count = 0;
+    private boolean closed = false;
+    private boolean cancelled = false;
+    private RuntimeException failure;
+
+    private final Token[] batch = new Token[BATCH_SIZE];
+    private int batched = 0;
+
+    public TokenPipe(int capacity) {
+        if (capacity < BATCH_SIZE) {
+            throw new IllegalArgumentException("The capacity must be at least " + BATCH_SIZE + ".");
+        }
+        ring = new Token[capacity];
+    }
+
+    /**
+     * Adds a token to the pipe, waiting if it is full. Throws a {@link
+     * CancellationException} if the pipe has been cancelled.
+     */
+    public void put(Token token) {
+        batch[batched++] = token;
+        if (batched == BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Marks the end of the tokens.
+     */
+    public void close() {
+        flush();
+        finish(null);
+    }
+
+    /**
+     * Marks the end of the tokens with an exception, which is thrown to the
+     * consumer once it has taken the tokens before it.
+     */
+    public void fail(RuntimeException exception) {
+        try {
+            flush();
+        } finally {
+            finish(exception);
+        }
+    }
+
+    /**
+     * Cancels the pipe, discarding any tokens and causing the producer to
+     * stop the next time it adds a token.
+     */
+    public void cancel() {
+        lock.lock();
+        try {
+            cancelled = true;
+            count = 0;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes up to {@code length} tokens into the array starting at {@code
+     * offset}, waiting until at least one is available. Returns the number of
+     * tokens removed, or -1 if there are no more tokens.
+     */
+    public int take(Token[] tokens, int offset, int length) {
+        lock.lock();
+        try {
+            while (count == 0 && !closed && !cancelled) {
+                await(notEmpty);
+            }
+            if (cancelled) {
+                throw new CancellationException("The token pipe was cancelled.");
+            } else if (count == 0) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return -1;
+            }
+            int taken = Math.min(count, length);
+            for (int i = 0; i < taken; i++) {
+                tokens[offset + i] = ring[head];
+                ring[head] = null;
+                head = head + 1 == ring.length ? 0 : head + 1;
+            }
+            count -= taken;
+            notFull.signal();
+            return taken;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the batch to the ring, waiting for space as needed.
+     */
+    private void flush() {
+        int flushed = 0;
+        lock.lock();
+        try {
+            while (flushed < batched) {
+                while (count == ring.length && !cancelled) {
+                    await(notFull);
+                }
+                if (cancelled) {
+                    throw new CancellationException("The token pipe was cancelled.");
+                }
+                int tail = (head + count) % ring.length;
+                int added = Math.min(batched - flushed, ring.length - count);
+                for (int i = 0; i < added; i++) {
+                    ring[tail] = batch[flushed + i];
+                    tail = tail + 1 == ring.length ? 0 : tail + 1;
+                }
+                flushed += added;
+                count += added;
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+            batched = 0;
+        }
+    }
+
+    private void finish(RuntimeException exception) {
+        lock.lock();
+        try {
+            closed = true;
+            failure = exception;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits on the condition, cancelling the pipe if the thread is
+     * interrupted.
+     */
+    private void await(Condition condition) {
+        try {
+            condition.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled = true;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        }
+    }
+
+}
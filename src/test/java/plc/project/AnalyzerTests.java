@@ -1,12 +1,17 @@
 package plc.project;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Optional;
 import java.util.function.Consumer;
@@ -381,6 +386,28 @@ public final class AnalyzerTests {
         );
     }
 
+    @Test
+    public void testCache(@TempDir Path directory) throws IOException {
+        String source = "LET x: Integer = 1;\nDEF main(): Integer DO\n    LET y = x + 2;\n    print(y);\n    RETURN y;\nEND\n";
+        CompilationCache cache = new CompilationCache(directory, 1 << 20);
+        Ast.Source expected = cache.compile(source);
+        Ast.Source actual = cache.compile(source);
+        Assertions.assertNotSame(expected, actual);
+        Assertions.assertEquals(expected, actual);
+        //the field and the access of it still share a variable
+        Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) actual.getMethods().get(0).getStatements().get(0);
+        Ast.Expr.Access access = (Ast.Expr.Access) ((Ast.Expr.Binary) declaration.getValue().get()).getLeft();
+        Assertions.assertSame(actual.getFields().get(0).getVariable(), access.getVariable());
+        //evicts the least recently used entry when a second source is added
+        try (Stream<Path> files = Files.list(directory)) {
+            new CompilationCache(directory, Files.size(files.findFirst().get())).compile(source.replace("2", "3"));
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            Assertions.assertEquals(1, files.count());
+        }
+        Assertions.assertEquals(expected, cache.compile(source));
+    }
+
     /**
      * Helper function for tests. If {@param expected} is {@code null}, analysis
      * is expected to throw a {@link RuntimeException}.
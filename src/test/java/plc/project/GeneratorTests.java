@@ -151,6 +151,26 @@ public class GeneratorTests {
         );
     }
 
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testLiteralExpression(String test, Ast.Expr.Literal ast, String expected) {
+        test(ast, expected);
+    }
+
+    private static Stream<Arguments> testLiteralExpression() {
+        return Stream.of(
+                Arguments.of("Compact Integer", Ast.Expr.Literal.ofInteger(-42), "-42"),
+                Arguments.of("Integer", new Ast.Expr.Literal(new BigInteger("123456789012345678901234567890")), "123456789012345678901234567890"),
+                Arguments.of("Compact Decimal", Ast.Expr.Literal.ofDecimal(150, 2), "1.50"),
+                Arguments.of("Compact Decimal Below One", Ast.Expr.Literal.ofDecimal(-5, 3), "-0.005"),
+                //the same exponent as BigDecimal#toString
+                Arguments.of("Compact Decimal Exponent", Ast.Expr.Literal.ofDecimal(1, 9), "1E-9"),
+                Arguments.of("Decimal", new Ast.Expr.Literal(new BigDecimal("2.5")), "2.5"),
+                Arguments.of("Character", new Ast.Expr.Literal('c'), "'c'"),
+                Arguments.of("Nil", new Ast.Expr.Literal(null), "null")
+        );
+    }
+
     @ParameterizedTest(name = "{0}")
     @MethodSource
     void testFunctionExpression(String test, Ast.Expr.Function ast, String expected) {
@@ -342,6 +342,25 @@ final class InterpreterTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testDivideByZero(String test, Ast.Expr.Literal left, Ast.Expr.Literal right) {
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        RuntimeException exception = Assertions.assertThrows(RuntimeException.class, () -> interpreter.visit(new Ast.Expr.Binary("/", left, right)));
+        Assertions.assertEquals(RuntimeException.class, exception.getClass());
+        Assertions.assertEquals("Cannot divide by zero.", exception.getMessage());
+    }
+
+    private static Stream<Arguments> testDivideByZero() {
+        return Stream.of(
+                //parsed literals which fit in a long are compact
+                Arguments.of("Compact Integer", Ast.Expr.Literal.ofInteger(1), Ast.Expr.Literal.ofInteger(0)),
+                Arguments.of("Integer", new Ast.Expr.Literal(BigInteger.ONE), new Ast.Expr.Literal(new BigInteger("0"))),
+                Arguments.of("Compact Decimal", Ast.Expr.Literal.ofDecimal(10, 1), Ast.Expr.Literal.ofDecimal(0, 1)),
+                Arguments.of("Decimal", new Ast.Expr.Literal(BigDecimal.ONE), new Ast.Expr.Literal(new BigDecimal("0.0")))
+        );
+    }
+
     @ParameterizedTest
     @MethodSource
     void testAccessExpression(String test, Ast ast, Object expected) {
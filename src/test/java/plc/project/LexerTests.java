@@ -2,10 +2,17 @@ package plc.project;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Stream;
@@ -106,6 +113,23 @@ public class LexerTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testCode(String test, String input, int expected) {
+        Assertions.assertEquals(expected, new Lexer(input).lexToken().getCode());
+    }
+
+    private static Stream<Arguments> testCode() {
+        return Stream.of(
+                Arguments.of("Keyword", "LET", TokenCode.LET),
+                Arguments.of("Keyword Prefix", "LETTER", TokenCode.NONE),
+                Arguments.of("Identifier", "getName", TokenCode.NONE),
+                Arguments.of("Operator", "(", TokenCode.LEFT_PAREN),
+                Arguments.of("Comparison", "<=", TokenCode.LESS_EQUAL),
+                Arguments.of("String", "\"LET\"", TokenCode.NONE)
+        );
+    }
+
     @ParameterizedTest
     @MethodSource
     void testExamples(String test, String input, List<Token> expected) {
@@ -131,6 +155,99 @@ public class LexerTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource("testExamples")
+    void testReader(String test, String input, List<Token> expected) {
+        List<Token> actual = new ArrayList<>();
+        new Lexer(new StringReader(input)).iterator().forEachRemaining(actual::add);
+        Assertions.assertEquals(expected, actual);
+    }
+
+    @ParameterizedTest
+    @MethodSource("testExamples")
+    void testMapped(String test, String input, List<Token> expected, @TempDir Path directory) throws IOException {
+        Path file = directory.resolve("input.plc");
+        Files.write(file, input.getBytes(StandardCharsets.US_ASCII));
+        Assertions.assertEquals(expected, new Lexer(file).lex());
+    }
+
+    @ParameterizedTest
+    @MethodSource("testExamples")
+    void testBuffer(String test, String input, List<Token> expected) {
+        Assertions.assertEquals(expected, new Lexer(input).lexBuffer().asList());
+    }
+
+    @Test
+    void testParallel() {
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 1_000_000) {
+            //multi-line strings may contain the split points between chunks
+            builder.append("LET name = \"first\nsecond\nthird\";\n");
+            builder.append("DEF f(x) DO\n    print(x + 1.5, 'c');\nEND\n");
+        }
+        String input = builder.toString();
+        Assertions.assertEquals(new Lexer(input).lex(), new Lexer(input).lexParallel());
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Lexer(input + "\"unterminated").lexParallel());
+        Assertions.assertEquals(input.length() + 13, exception.getIndex());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRelex(String test, String source, int offset, int removed, String inserted) {
+        String edited = source.substring(0, offset) + inserted + source.substring(offset + removed);
+        List<Token> previous = new Lexer(source).lex();
+        Assertions.assertEquals(new Lexer(edited).lex(), new Lexer(edited).relex(previous, offset, removed, inserted.length()));
+    }
+
+    private static Stream<Arguments> testRelex() {
+        String source = "LET x = 1;\nLET y = \"string\";\nprint(x + y);";
+        return Stream.of(
+                Arguments.of("Unchanged", source, 4, 0, ""),
+                Arguments.of("Rename", source, 4, 1, "name"),
+                Arguments.of("Extend Identifier", source, 5, 0, "yz"),
+                Arguments.of("Decimal", source, 9, 0, ".5"),
+                Arguments.of("Split Token", source, 2, 0, " "),
+                Arguments.of("Split String", source, 23, 0, "\" + \""),
+                Arguments.of("Delete Line", source, 0, 11, ""),
+                Arguments.of("End", source, source.length(), 0, "\nx;")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRecover(String test, String input, List<Token> expected, List<Diagnostic> diagnostics) {
+        List<Diagnostic> actual = new ArrayList<>();
+        Lexer lexer = new Lexer(input);
+        lexer.setDiagnostics(actual);
+        Assertions.assertEquals(expected, lexer.lex());
+        Assertions.assertEquals(diagnostics, actual);
+    }
+
+    private static Stream<Arguments> testRecover() {
+        return Stream.of(
+                Arguments.of("Invalid Character", "'ab' x", Arrays.asList(
+                        new Token(Token.Type.ERROR, "'ab'", 0),
+                        new Token(Token.Type.IDENTIFIER, "x", 5)
+                ), Arrays.asList(new Diagnostic("Unterminated Character", 1))),
+                Arguments.of("Unterminated Character", "'\nx", Arrays.asList(
+                        new Token(Token.Type.ERROR, "'", 0),
+                        new Token(Token.Type.IDENTIFIER, "x", 2)
+                ), Arrays.asList(new Diagnostic("Unterminated Character", 1))),
+                Arguments.of("Invalid Escapes", "\"\\q\\z\" 'c'", Arrays.asList(
+                        new Token(Token.Type.ERROR, "\"\\q\\z\"", 0),
+                        new Token(Token.Type.CHARACTER, "'c'", 7)
+                ), Arrays.asList(
+                        new Diagnostic("Invalid Escape Character", 2),
+                        new Diagnostic("Invalid Escape Character", 4)
+                )),
+                Arguments.of("Unterminated String", "x \"string", Arrays.asList(
+                        new Token(Token.Type.IDENTIFIER, "x", 0),
+                        new Token(Token.Type.ERROR, "\"string", 2)
+                ), Arrays.asList(new Diagnostic("Unterminated String", 9)))
+        );
+    }
+
     @Test
     void testException() {
         ParseException exception = Assertions.assertThrows(ParseException.class,
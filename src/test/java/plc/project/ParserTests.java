@@ -2,12 +2,17 @@ package plc.project;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -344,6 +349,14 @@ final class ParserTests {
                         Arrays.asList(new Token(Token.Type.DECIMAL, "2.0", 0)),
                         new Ast.Expr.Literal(new BigDecimal("2.0"))
                 ),
+                Arguments.of("Large Integer Literal",
+                        Arrays.asList(new Token(Token.Type.INTEGER, "-123456789012345678901234567890", 0)),
+                        new Ast.Expr.Literal(new BigInteger("-123456789012345678901234567890"))
+                ),
+                Arguments.of("Negative Decimal Literal",
+                        Arrays.asList(new Token(Token.Type.DECIMAL, "-0.050", 0)),
+                        new Ast.Expr.Literal(new BigDecimal("-0.050"))
+                ),
                 Arguments.of("Character Literal",
                         Arrays.asList(new Token(Token.Type.CHARACTER, "'c'", 0)),
                         new Ast.Expr.Literal('c')
@@ -355,6 +368,14 @@ final class ParserTests {
                 Arguments.of("Escape Character",
                         Arrays.asList(new Token(Token.Type.STRING, "\"Hello,\\nWorld!\"", 0)),
                         new Ast.Expr.Literal("Hello,\nWorld!")
+                ),
+                Arguments.of("Escaped Quote and Backslash",
+                        Arrays.asList(new Token(Token.Type.STRING, "\"a\\\"b\\\\c\"", 0)),
+                        new Ast.Expr.Literal("a\"b\\c")
+                ),
+                Arguments.of("Escape Character Literal",
+                        Arrays.asList(new Token(Token.Type.CHARACTER, "'\\''", 0)),
+                        new Ast.Expr.Literal('\'')
                 )
         );
     }
@@ -448,6 +469,45 @@ final class ParserTests {
                                 new Ast.Expr.Access(Optional.empty(), "expr1"),
                                 new Ast.Expr.Access(Optional.empty(), "expr2")
                         )
+                ),
+                Arguments.of("Binary Precedence",
+                        Arrays.asList(
+                                //expr1 + expr2 * expr3 == expr4
+                                new Token(Token.Type.IDENTIFIER, "expr1", 0),
+                                new Token(Token.Type.OPERATOR, "+", 6),
+                                new Token(Token.Type.IDENTIFIER, "expr2", 8),
+                                new Token(Token.Type.OPERATOR, "*", 14),
+                                new Token(Token.Type.IDENTIFIER, "expr3", 16),
+                                new Token(Token.Type.OPERATOR, "==", 22),
+                                new Token(Token.Type.IDENTIFIER, "expr4", 25)
+                        ),
+                        new Ast.Expr.Binary("==",
+                                new Ast.Expr.Binary("+",
+                                        new Ast.Expr.Access(Optional.empty(), "expr1"),
+                                        new Ast.Expr.Binary("*",
+                                                new Ast.Expr.Access(Optional.empty(), "expr2"),
+                                                new Ast.Expr.Access(Optional.empty(), "expr3")
+                                        )
+                                ),
+                                new Ast.Expr.Access(Optional.empty(), "expr4")
+                        )
+                ),
+                Arguments.of("Binary Left Associative",
+                        Arrays.asList(
+                                //expr1 - expr2 - expr3
+                                new Token(Token.Type.IDENTIFIER, "expr1", 0),
+                                new Token(Token.Type.OPERATOR, "-", 6),
+                                new Token(Token.Type.IDENTIFIER, "expr2", 8),
+                                new Token(Token.Type.OPERATOR, "-", 14),
+                                new Token(Token.Type.IDENTIFIER, "expr3", 16)
+                        ),
+                        new Ast.Expr.Binary("-",
+                                new Ast.Expr.Binary("-",
+                                        new Ast.Expr.Access(Optional.empty(), "expr1"),
+                                        new Ast.Expr.Access(Optional.empty(), "expr2")
+                                ),
+                                new Ast.Expr.Access(Optional.empty(), "expr3")
+                        )
                 )
         );
     }
@@ -604,6 +664,321 @@ final class ParserTests {
         test(input, expected, Parser::parseSource);
     }
 
+    @Test
+    void testPipelined() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            builder.append("LET first").append(i).append(": Integer = ").append(i).append(";\n");
+        }
+        builder.append("DEF main(): Integer DO\n    WHILE first != 10 DO\n        print(first);\n        first = first + 1;\n    END\nEND\n");
+        String source = builder.toString();
+        Assertions.assertEquals(new Parser(new Lexer(source).lex()).parseSource(), Parser.parsePipelined(new Lexer(source)));
+        //the lexer error is after the parse error, but is thrown first by lex()
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> Parser.parsePipelined(new Lexer("LET = 1;\n" + source + "\"unterminated")));
+        Assertions.assertEquals("Unterminated String", exception.getMessage());
+    }
+
+    @Test
+    void testParallel() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append("LET first").append(i).append(": Integer = ").append(i).append(";\n");
+        }
+        for (int i = 0; i < 1000; i++) {
+            builder.append("DEF main").append(i).append("(): Integer DO\n    WHILE first != 10 DO\n        IF first > 5 DO\n            print(first);\n        ELSE\n            first = first + 1;\n        END\n    END\nEND\n");
+        }
+        String source = builder.toString();
+        Assertions.assertEquals(new Parser(new Lexer(source).lex()).parseSource(), new Parser(new Lexer(source).lex()).parseSourceParallel());
+        //the unbalanced END is only found when parsing sequentially
+        String invalid = source + "DEF f() DO END END";
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(invalid).lex()).parseSource());
+        ParseException actual = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(invalid).lex()).parseSourceParallel());
+        Assertions.assertEquals(expected.getIndex(), actual.getIndex());
+    }
+
+    @Test
+    void testReparse() {
+        String source = "LET x: Integer = 1;\nDEF f() DO\n    print(x);\nEND\nDEF g() DO\n    print(x + 1);\nEND\n";
+        List<Token> tokens = new Lexer(source).lex();
+        Ast.Source previous = new Parser(tokens).parseSource();
+        //replaces "x + 1" in g with "x * 2 + 1"
+        int offset = source.indexOf("x + 1");
+        String edited = source.substring(0, offset) + "x * 2" + source.substring(offset + 1);
+        List<Token> editedTokens = new Lexer(edited).lex();
+        Ast.Source actual = new Parser(editedTokens).reparseSource(previous, tokens, offset, 1, 5);
+        Assertions.assertEquals(new Parser(editedTokens).parseSource(), actual);
+        Assertions.assertSame(previous.getFields().get(0), actual.getFields().get(0));
+        Assertions.assertSame(previous.getMethods().get(0), actual.getMethods().get(0));
+        Assertions.assertNotSame(previous.getMethods().get(1), actual.getMethods().get(1));
+    }
+
+    @Test
+    void testReparseSpans() {
+        String source = "LET x: Integer = 1;\nDEF f() DO\n    print(x);\nEND\nDEF g() DO\n    print(x + 1);\nEND\n";
+        List<Token> tokens = new Lexer(source).lex();
+        Ast.Source previous = new Parser(tokens).parseSource();
+        //replaces "x" in f with "x * 2", so g is reused after the edit
+        int offset = source.indexOf("x);");
+        String edited = source.substring(0, offset) + "x * 2" + source.substring(offset + 1);
+        List<Token> editedTokens = new Lexer(edited).lex();
+        Ast.Source actual = new Parser(editedTokens).reparseSource(previous, tokens, offset, 1, 5);
+        Ast.Source expected = new Parser(editedTokens).parseSource();
+        Assertions.assertSame(previous.getMethods().get(1), actual.getMethods().get(1));
+        Ast.Expr.Function print = (Ast.Expr.Function) ((Ast.Stmt.Expression) actual.getMethods().get(1).getStatements().get(0)).getExpression();
+        Ast.Expr.Function expectedPrint = (Ast.Expr.Function) ((Ast.Stmt.Expression) expected.getMethods().get(1).getStatements().get(0)).getExpression();
+        Ast[] nodes = {actual, actual.getFields().get(0), actual.getMethods().get(0), actual.getMethods().get(1), print, print.getArguments().get(0)};
+        Ast[] expectedNodes = {expected, expected.getFields().get(0), expected.getMethods().get(0), expected.getMethods().get(1), expectedPrint, expectedPrint.getArguments().get(0)};
+        for (int i = 0; i < nodes.length; i++) {
+            Assertions.assertEquals(expectedNodes[i].getId(), nodes[i].getId());
+            Assertions.assertEquals(expectedNodes[i].getStart(), nodes[i].getStart());
+            Assertions.assertEquals(expectedNodes[i].getEnd(), nodes[i].getEnd());
+        }
+        Assertions.assertEquals(edited.indexOf("DEF g"), actual.getMethods().get(1).getStart());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testTokenPattern(String test, List<Token> tokens, Object[] patterns, boolean expected) {
+        Assertions.assertEquals(expected, new Parser(tokens).peek(patterns));
+        Assertions.assertEquals(expected, new Parser(tokens).peek(TokenPattern.of(patterns)));
+    }
+
+    private static Stream<Arguments> testTokenPattern() {
+        List<Token> tokens = Arrays.asList(
+                //.name(
+                new Token(Token.Type.OPERATOR, ".", 0),
+                new Token(Token.Type.IDENTIFIER, "name", 1),
+                new Token(Token.Type.OPERATOR, "(", 5)
+        );
+        return Stream.of(
+                Arguments.of("Call", tokens, new Object[] {".", Token.Type.IDENTIFIER, "("}, true),
+                Arguments.of("Literal", tokens, new Object[] {".", "name"}, true),
+                Arguments.of("Wrong Type", tokens, new Object[] {Token.Type.IDENTIFIER}, false),
+                Arguments.of("Wrong Operator", tokens, new Object[] {".", Token.Type.IDENTIFIER, ")"}, false),
+                Arguments.of("Past End", tokens, new Object[] {".", Token.Type.IDENTIFIER, "(", Token.Type.IDENTIFIER}, false)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRecover(String test, String input, Ast.Source expected, List<Diagnostic> diagnostics) {
+        for (boolean stackSafe : new boolean[] {false, true}) {
+            List<Diagnostic> actual = new ArrayList<>();
+            Parser parser = new Parser(new Lexer(input).lex());
+            parser.setDiagnostics(actual);
+            parser.setStackSafe(stackSafe);
+            Assertions.assertEquals(expected, parser.parseSource());
+            Assertions.assertEquals(diagnostics, actual);
+        }
+    }
+
+    private static Stream<Arguments> testRecover() {
+        Ast.Stmt.Expression print = new Ast.Stmt.Expression(
+                new Ast.Expr.Function(Optional.empty(), "print", Arrays.asList(new Ast.Expr.Literal(BigInteger.ONE)))
+        );
+        return Stream.of(
+                Arguments.of("Statements", "DEF f() DO\n    x = ;\n    print(1);\n    y(;\nEND\n",
+                        new Ast.Source(Arrays.asList(), Arrays.asList(
+                                new Ast.Method("f", Arrays.asList(), Arrays.asList(), Optional.empty(), Arrays.asList(
+                                        new Ast.Stmt.Error(new Diagnostic("Invalid Primary Expression", 19)),
+                                        print,
+                                        new Ast.Stmt.Error(new Diagnostic("Invalid Primary Expression", 41))
+                                ))
+                        )),
+                        Arrays.asList(
+                                new Diagnostic("Invalid Primary Expression", 19),
+                                new Diagnostic("Invalid Primary Expression", 41)
+                        )
+                ),
+                Arguments.of("Members", "LET x Integer;\nLET y: Integer;\nDEF f(1) DO END\nDEF g() DO END\n",
+                        new Ast.Source(
+                                Arrays.asList(new Ast.Field("y", "Integer", Optional.empty())),
+                                Arrays.asList(new Ast.Method("g", Arrays.asList(), Arrays.asList(), Optional.empty(), Arrays.asList()))
+                        ),
+                        Arrays.asList(
+                                new Diagnostic("Missing type annotation", 6),
+                                new Diagnostic("Expected Identifier or ')'", 37)
+                        )
+                ),
+                Arguments.of("Nested Block", "DEF f() DO\n    IF x DO\n        RETURN;\n    END\n    print(1);\nEND\n",
+                        new Ast.Source(Arrays.asList(), Arrays.asList(
+                                new Ast.Method("f", Arrays.asList(), Arrays.asList(), Optional.empty(), Arrays.asList(
+                                        new Ast.Stmt.If(
+                                                new Ast.Expr.Access(Optional.empty(), "x"),
+                                                Arrays.asList(new Ast.Stmt.Error(new Diagnostic("Invalid Primary Expression", 37))),
+                                                Arrays.asList()
+                                        ),
+                                        print
+                                ))
+                        )),
+                        Arrays.asList(new Diagnostic("Invalid Primary Expression", 37))
+                )
+        );
+    }
+
+    @Test
+    void testStackSafe() {
+        String source = "DEF f() DO\n    IF x DO\n        print(a.b(1, (2 + 3) * 4).c);\n    ELSE\n        WHILE y DO FOR z IN w DO RETURN -1; END END\n    END\nEND\n";
+        Parser parser = new Parser(new Lexer(source).lex());
+        parser.setStackSafe(true);
+        Assertions.assertEquals(new Parser(new Lexer(source).lex()).parseSource(), parser.parseSource());
+        //deep enough to overflow the stack when parsed recursively
+        int depth = 100_000;
+        StringBuilder builder = new StringBuilder("DEF f() DO\n");
+        for (int i = 0; i < depth; i++) {
+            builder.append("IF x DO ");
+        }
+        builder.append("RETURN ");
+        for (int i = 0; i < depth; i++) {
+            builder.append("(");
+        }
+        builder.append("1");
+        for (int i = 0; i < depth; i++) {
+            builder.append(")");
+        }
+        builder.append(";");
+        for (int i = 0; i <= depth; i++) {
+            builder.append(" END");
+        }
+        parser = new Parser(new Lexer(builder.toString()).lex());
+        parser.setStackSafe(true);
+        Ast.Stmt stmt = parser.parseSource().getMethods().get(0).getStatements().get(0);
+        for (int i = 0; i < depth; i++) {
+            stmt = ((Ast.Stmt.If) stmt).getThenStatements().get(0);
+        }
+        Ast.Expr expr = ((Ast.Stmt.Return) stmt).getValue();
+        for (int i = 0; i < depth; i++) {
+            expr = ((Ast.Expr.Group) expr).getExpression();
+        }
+        Assertions.assertEquals(new Ast.Expr.Literal(BigInteger.ONE), expr);
+    }
+
+    @Test
+    void testSerialize(@TempDir Path directory) throws IOException {
+        String source = "LET x: Integer = 123456789012345678901234567890;\nDEF f(a: Integer, b Decimal): Integer DO\n    LET y = -1.50;\n    IF a.b(x, 'c') != NIL DO\n        print(\"a\\nb\");\n    ELSE\n        WHILE TRUE DO RETURN (a + 2) * b; END\n    END\n    FOR z IN list DO z.y = FALSE; END\nEND\n";
+        Ast.Source expected = new Parser(new Lexer(source).lex()).parseSource();
+        Path file = directory.resolve("source.plcast");
+        AstWriter.write(expected, file);
+        Ast.Source actual = AstReader.read(file);
+        Assertions.assertEquals(expected, actual);
+        Ast.Stmt.If expectedIf = (Ast.Stmt.If) expected.getMethods().get(0).getStatements().get(1);
+        Ast.Stmt.If actualIf = (Ast.Stmt.If) actual.getMethods().get(0).getStatements().get(1);
+        Ast[] expectedNodes = {expected, expected.getFields().get(0), expected.getMethods().get(0), expectedIf, expectedIf.getCondition(), expectedIf.getElseStatements().get(0)};
+        Ast[] actualNodes = {actual, actual.getFields().get(0), actual.getMethods().get(0), actualIf, actualIf.getCondition(), actualIf.getElseStatements().get(0)};
+        for (int i = 0; i < expectedNodes.length; i++) {
+            Assertions.assertEquals(expectedNodes[i].getId(), actualNodes[i].getId());
+            Assertions.assertEquals(expectedNodes[i].getStart(), actualNodes[i].getStart());
+            Assertions.assertEquals(expectedNodes[i].getEnd(), actualNodes[i].getEnd());
+        }
+        byte[] bytes = AstWriter.write(expected);
+        bytes[7]++;
+        Assertions.assertThrows(IOException.class, () -> AstReader.read(ByteBuffer.wrap(bytes)));
+    }
+
+    @Test
+    void testFlatAst() {
+        String source = "LET x: Integer = 123456789012345678901234567890;\nDEF f(a: Integer, b Decimal): Integer DO\n    LET y = -1.50;\n    IF a.b(x, 'c') != NIL DO\n        print(\"a\\nb\");\n    ELSE\n        WHILE TRUE DO RETURN (a + 2) * b; END\n    END\n    FOR z IN list DO z.y = FALSE; END\nEND\n";
+        Ast.Source expected = new Parser(new Lexer(source).lex()).parseSource();
+        FlatAst flat = FlatAst.of(expected);
+        Ast.Source actual = flat.toAst();
+        Assertions.assertEquals(expected, actual);
+        int method = flat.getMethod(flat.getRoot(), 0);
+        Assertions.assertEquals("f", flat.getName(method));
+        int stmt = flat.getStatement(method, 1);
+        Assertions.assertEquals(Ast.IF, flat.getKind(stmt));
+        Assertions.assertEquals(Ast.WHILE, flat.getKind(flat.getElseStatement(stmt, 0)));
+        Assertions.assertEquals(expected.getMethods().get(0).getStatements().get(1), flat.toAst(stmt));
+        Ast.Stmt.If expectedIf = (Ast.Stmt.If) expected.getMethods().get(0).getStatements().get(1);
+        Ast.Stmt.If actualIf = (Ast.Stmt.If) actual.getMethods().get(0).getStatements().get(1);
+        Ast[] expectedNodes = {expected, expected.getFields().get(0), expected.getMethods().get(0), expectedIf, expectedIf.getCondition(), expectedIf.getElseStatements().get(0)};
+        Ast[] actualNodes = {actual, actual.getFields().get(0), actual.getMethods().get(0), actualIf, actualIf.getCondition(), actualIf.getElseStatements().get(0)};
+        for (int i = 0; i < expectedNodes.length; i++) {
+            Assertions.assertEquals(expectedNodes[i].getId(), actualNodes[i].getId());
+            Assertions.assertEquals(expectedNodes[i].getStart(), actualNodes[i].getStart());
+            Assertions.assertEquals(expectedNodes[i].getEnd(), actualNodes[i].getEnd());
+        }
+        Assertions.assertEquals(expectedIf.getId(), flat.getId(stmt));
+        Assertions.assertEquals(expectedIf.getStart(), flat.getStart(stmt));
+        Assertions.assertEquals(expectedIf.getEnd(), flat.getEnd(stmt));
+        Assertions.assertEquals(expectedIf.getId(), flat.toAst(stmt).getId());
+    }
+
+    @Test
+    void testHashCode() {
+        String source = "DEF f(a: Integer): Integer DO\n    LET y = -1.50;\n    WHILE a < 10 DO a = a + 1; END\n    RETURN a.b(y, 'c');\nEND\n";
+        Ast.Source first = new Parser(new Lexer(source).lex()).parseSource();
+        Ast.Source second = new Parser(new Lexer(source).lex()).parseSource();
+        Assertions.assertEquals(first.hashCode(), second.hashCode());
+        Assertions.assertEquals(first, second);
+        Assertions.assertNotEquals(first, new Parser(new Lexer(source.replace("10", "11")).lex()).parseSource());
+        Ast.Expr.Literal compact = Ast.Expr.Literal.ofDecimal(150, 2);
+        Ast.Expr.Literal literal = new Ast.Expr.Literal(new BigDecimal("1.50"));
+        Assertions.assertEquals(literal.hashCode(), compact.hashCode());
+        Assertions.assertEquals(literal, compact);
+        Assertions.assertEquals(new Ast.Expr.Literal(BigInteger.TEN).hashCode(), Ast.Expr.Literal.ofInteger(10).hashCode());
+        int hash = compact.hashCode();
+        compact.setType(Environment.Type.DECIMAL);
+        Assertions.assertEquals(hash, compact.hashCode());
+        Assertions.assertNotEquals(literal, compact);
+    }
+
+    @Test
+    void testInterner() {
+        String source = "DEF f(): Integer DO\n    LET y = (1 + 2) * 3;\n    RETURN x + (1 + 2) * 3;\nEND\nDEF g(): Integer DO RETURN x + (1 + 2) * 3; END\n";
+        Parser parser = new Parser(new Lexer(source).lex());
+        AstInterner interner = new AstInterner();
+        parser.setInterner(interner);
+        Ast.Source ast = parser.parseSource();
+        Assertions.assertEquals(new Parser(new Lexer(source).lex()).parseSource(), ast);
+        Ast.Expr.Binary declared = (Ast.Expr.Binary) ((Ast.Stmt.Declaration) ast.getMethods().get(0).getStatements().get(0)).getValue().get();
+        Ast.Expr.Binary first = (Ast.Expr.Binary) ((Ast.Stmt.Return) ast.getMethods().get(0).getStatements().get(1)).getValue();
+        Ast.Expr.Binary second = (Ast.Expr.Binary) ((Ast.Stmt.Return) ast.getMethods().get(1).getStatements().get(0)).getValue();
+        Assertions.assertSame(declared, first.getRight());
+        Assertions.assertSame(first.getRight(), second.getRight());
+        Assertions.assertNotSame(first, second);
+        Assertions.assertNotSame(first.getLeft(), second.getLeft());
+        Assertions.assertEquals(6, interner.size());
+    }
+
+    @Test
+    void testInternerIds() {
+        AstInterner interner = new AstInterner();
+        Parser first = new Parser(new Lexer("LET a: Integer = x; LET b: Integer = 1 + 2;").lex());
+        first.setInterner(interner);
+        Ast.Source firstAst = first.parseSource();
+        Parser second = new Parser(new Lexer("LET c: Integer = 1 + 2;").lex());
+        second.setInterner(interner);
+        Ast.Source secondAst = second.parseSource();
+        Ast.Expr.Binary binary = (Ast.Expr.Binary) secondAst.getFields().get(0).getValue().get();
+        Assertions.assertSame(firstAst.getFields().get(1).getValue().get(), binary);
+        Assertions.assertEquals(4, binary.getId());
+        Assertions.assertEquals(6, firstAst.getId());
+        Assertions.assertEquals(7, secondAst.getFields().get(0).getId());
+        Assertions.assertEquals(8, secondAst.getId());
+        Assertions.assertEquals(9, interner.getIdCount());
+    }
+
+    @Test
+    void testSpans() {
+        String source = "LET x: Integer = 1 + y.f(2);\n";
+        int[][] spans = {{17, 18}, {21, 22}, {25, 26}, {21, 27}, {17, 27}, {0, 28}, {0, 28}};
+        for (boolean stackSafe : new boolean[] {false, true}) {
+            Parser parser = new Parser(new Lexer(source).lex());
+            parser.setStackSafe(stackSafe);
+            Ast.Source ast = parser.parseSource();
+            Ast.Field field = ast.getFields().get(0);
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) field.getValue().get();
+            Ast.Expr.Function function = (Ast.Expr.Function) binary.getRight();
+            Ast[] nodes = {binary.getLeft(), function.getReceiver().get(), function.getArguments().get(0), function, binary, field, ast};
+            for (int i = 0; i < nodes.length; i++) {
+                Assertions.assertEquals(i, nodes[i].getId());
+                Assertions.assertEquals(spans[i][0], nodes[i].getStart());
+                Assertions.assertEquals(spans[i][1], nodes[i].getEnd());
+            }
+        }
+    }
+
     /**
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).